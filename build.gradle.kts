@@ -1,9 +1,11 @@
 plugins {
     id("java")
     id("org.springframework.boot") version "3.4.2"
+    id("org.springframework.boot.aot") version "3.4.2"
     id("io.spring.dependency-management") version "1.1.7"
     id("checkstyle")
     id("org.owasp.dependencycheck") version "12.0.2"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.serezk4"
@@ -30,11 +32,13 @@ val jakartaValidationVersion = "3.1.0"
 val flywayDatabasePostgresVersion = "11.3.1"
 val r2dbcPoolVersion = "1.0.2.RELEASE"
 val log4jVersion = "2.24.3"
+val disruptorVersion = "4.0.0"
 val junitBomVersion = "5.10.0"
 val mapstructVersion = "1.6.3"
 val telegramBotsVersion = "8.2.0"
 val hibernateVersion = "6.6.7.Final"
 val apachePoiVersion = "5.4.0"
+val jmhCoreVersion = "1.37"
 
 /// word ///
 dependencies {
@@ -49,9 +53,16 @@ dependencies {
 
 /// database ///
 dependencies {
-    runtimeOnly("org.postgresql:postgresql")
+    implementation("org.postgresql:postgresql")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
     implementation("org.hibernate.orm:hibernate-core:${hibernateVersion}")
+
+    implementation("org.springframework.boot:spring-boot-starter-data-r2dbc")
+    implementation("io.r2dbc:r2dbc-pool:$r2dbcPoolVersion")
+    runtimeOnly("org.postgresql:r2dbc-postgresql")
+
+    implementation("org.flywaydb:flyway-core:$flywayDatabasePostgresVersion")
+    implementation("org.flywaydb:flyway-database-postgresql:$flywayDatabasePostgresVersion")
 }
 
 /// logging ///
@@ -64,6 +75,9 @@ dependencies {
 
     implementation("org.apache.logging.log4j:log4j-api:$log4jVersion")
     implementation("org.apache.logging.log4j:log4j-core:$log4jVersion")
+    implementation("org.apache.logging.log4j:log4j-layout-template-json:$log4jVersion")
+    annotationProcessor("org.apache.logging.log4j:log4j-core:$log4jVersion")
+    runtimeOnly("com.lmax:disruptor:$disruptorVersion")
 }
 
 configurations.all {
@@ -104,6 +118,63 @@ dependencies {
     implementation("org.telegram:telegrambots-client:$telegramBotsVersion")
 }
 
+/// benchmarks ///
+// ./gradlew jmh                       - all benchmarks except the database ones
+// ./gradlew jmh -PjmhDatabase          - also UserLookupBenchmark, needs the postgres from docker-compose
+// ./gradlew jmh -PjmhInclude=Keyboard  - benchmarks matching the regex
+dependencies {
+    jmhRuntimeOnly("org.postgresql:r2dbc-postgresql")
+}
+
+jmh {
+    jmhVersion = jmhCoreVersion
+    warmupIterations = 3
+    iterations = 5
+    fork = 1
+    timeUnit = "us"
+    benchmarkMode = listOf("avgt")
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    includes = listOfNotNull(project.findProperty("jmhInclude")?.toString())
+    if (!project.hasProperty("jmhDatabase")) excludes = listOf("UserLookupBenchmark")
+}
+
+/// load test ///
+// ./gradlew loadTest -Psnp.load.users=5000 -Psnp.load.latency=20 -Psnp.load.too-many-requests=0.01
+// needs the postgres from docker-compose; the bot itself talks to an in-process fake Bot API
+val loadTest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath + sourceSets.main.get().runtimeClasspath
+}
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Drives synthetic users through /start against a fake Telegram Bot API."
+    group = "verification"
+    classpath = loadTest.runtimeClasspath
+    mainClass = "com.serezk4.snp.loadtest.LoadTest"
+
+    project.properties
+        .filterKeys { it.startsWith("snp.load.") }
+        .forEach { (key, value) -> systemProperty(key, value.toString()) }
+
+    environment("POSTGRES_HOST", System.getenv("POSTGRES_HOST") ?: "localhost")
+    environment("POSTGRES_PORT", System.getenv("POSTGRES_PORT") ?: "5228")
+    environment("POSTGRES_DB", System.getenv("POSTGRES_DB") ?: "telegram")
+    environment("POSTGRES_USER", System.getenv("POSTGRES_USER") ?: "telegram_user")
+    environment("POSTGRES_PASSWORD", System.getenv("POSTGRES_PASSWORD") ?: "telegram_password")
+    environment("TELEGRAM_BOT_THREADS", System.getenv("TELEGRAM_BOT_THREADS") ?: "8")
+}
+
+// ./gradlew fakeTelegramServer -Psnp.fake.port=8081, the Bot API of scripts/startup-timing.sh
+tasks.register<JavaExec>("fakeTelegramServer") {
+    description = "Serves a fake Telegram Bot API holding one pending /help update."
+    group = "verification"
+    classpath = loadTest.runtimeClasspath
+    mainClass = "com.serezk4.snp.loadtest.FakeTelegramServer"
+    args(project.findProperty("snp.fake.port")?.toString() ?: "8081")
+}
+
 tasks.withType<Test> {
     useJUnitPlatform()
 }
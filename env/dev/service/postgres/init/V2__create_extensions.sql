@@ -0,0 +1,3 @@
+\connect telegram
+
+CREATE EXTENSION IF NOT EXISTS timescaledb;
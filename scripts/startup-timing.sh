@@ -0,0 +1,101 @@
+#!/usr/bin/env sh
+# Time from JVM start to polling and to the first update, for the cold jar and for the AOT + CDS
+# entrypoint of the same image.
+#
+# Needs the image built (make build), the postgres from docker-compose running and a JDK for gradle.
+# The bot talks to the load test's FakeTelegramServer on the host, which holds one pending /help
+# update, so the run touches neither Telegram nor the real bot's offsets; it registers chat
+# 900000001 in the database.
+#
+# usage: scripts/startup-timing.sh [runs]
+set -eu
+
+RUNS=${1:-5}
+IMAGE=${IMAGE:-testbot:latest}
+NETWORK=$(docker inspect -f '{{range $name, $_ := .NetworkSettings.Networks}}{{$name}}{{end}}' postgres)
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+PORT=${FAKE_BOT_API_PORT:-8081}
+FAKE=
+
+cleanup() {
+    docker rm -f startup-timing >/dev/null 2>&1 || true
+    if [ -n "$FAKE" ]; then
+        kill "$FAKE" 2>/dev/null || true
+        wait "$FAKE" 2>/dev/null || true
+        FAKE=
+    fi
+}
+trap cleanup EXIT
+
+# a fresh fake per run, so every run starts with the one pending update
+start_fake() {
+    "$ROOT/gradlew" -q -p "$ROOT" fakeTelegramServer -Psnp.fake.port="$PORT" >/tmp/fake-bot-api.log 2>&1 &
+    FAKE=$!
+
+    i=0
+    until curl -sf "http://127.0.0.1:$PORT/bot0/getMe" >/dev/null 2>&1; do
+        i=$((i + 1))
+        if [ "$i" -gt 600 ]; then
+            echo "fake Bot API did not start within 120 s, log:" >&2
+            cat /tmp/fake-bot-api.log >&2
+            exit 1
+        fi
+        sleep 0.2
+    done
+}
+
+# prints "<polling> <first update>" in seconds after JVM start
+measure() {
+    # runs in a command substitution, which does not inherit the trap
+    trap cleanup EXIT
+    start_fake
+
+    docker run -d --name startup-timing --network "$NETWORK" --add-host host.docker.internal:host-gateway \
+        --env-file "$ROOT/env/dev/bot/postgres.env" \
+        --env-file "$ROOT/env/dev/service/postgres/postgres.env" \
+        -e TELEGRAM_BOT_TOKEN=123456:startup-timing -e TELEGRAM_BOT_THREADS=4 \
+        -e TELEGRAM_API_URL="http://host.docker.internal:$PORT" \
+        "$@" >/dev/null
+
+    i=0
+    until docker logs startup-timing 2>&1 | grep -q 'first update .* s after JVM start'; do
+        i=$((i + 1))
+        if [ "$i" -gt 120 ]; then
+            echo "no update within 120 s, log:" >&2
+            docker logs startup-timing >&2
+            exit 1
+        fi
+        sleep 1
+    done
+
+    docker logs startup-timing 2>&1 | sed -n \
+        -e 's/.*polling \([0-9.]*\) s after JVM start.*/\1/p' \
+        -e 's/.*first update \([0-9.]*\) s after JVM start.*/\1/p' | tr '\n' ' '
+    echo
+    cleanup
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2 ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+for mode in cold optimized; do
+    : > "/tmp/startup-$mode"
+    n=1
+    while [ "$n" -le "$RUNS" ]; do
+        if [ "$mode" = cold ]; then
+            result=$(measure --entrypoint java "$IMAGE" -jar app.jar)
+        else
+            result=$(measure "$IMAGE")
+        fi
+        echo "$mode run $n: polling / first update (s): $result"
+        echo "$result" >> "/tmp/startup-$mode"
+        n=$((n + 1))
+    done
+done
+
+for mode in cold optimized; do
+    polling=$(cut -d' ' -f1 "/tmp/startup-$mode" | median)
+    first=$(cut -d' ' -f2 "/tmp/startup-$mode" | median)
+    echo "$mode: median polling ${polling} s, first update ${first} s over $RUNS runs"
+done
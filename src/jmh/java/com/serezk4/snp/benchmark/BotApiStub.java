@@ -0,0 +1,72 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.telegram.bot.Client;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.TelegramUrl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bot API that answers every call at once, so benchmarks measure the bot and not Telegram.
+ */
+final class BotApiStub implements AutoCloseable {
+    private static final String MESSAGE = """
+            {"ok": true, "result": {"message_id": 1, "date": 1700000000,
+             "chat": {"id": 1, "type": "private"}, "text": "ok"}}""";
+    private static final String TRUE = "{\"ok\": true, \"result\": true}";
+
+    private final HttpServer server;
+    private final AtomicLong handled = new AtomicLong();
+
+    BotApiStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    Client client() {
+        return new Client("benchmark", TelegramUrl.builder()
+                .schema("http")
+                .host("127.0.0.1")
+                .port(server.getAddress().getPort())
+                .testServer(false)
+                .build());
+    }
+
+    /**
+     * Number of calls answered so far.
+     */
+    long handled() {
+        return handled.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        final String path = exchange.getRequestURI().getPath();
+        final byte[] body = (path.endsWith("/sendMessage") || path.endsWith("/editMessageText") ? MESSAGE : TRUE)
+                .getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        handled.incrementAndGet();
+    }
+}
@@ -0,0 +1,61 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.telegram.util.DocumentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the questionnaire document sent at the end of {@code /start}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DocumentUtilBenchmark {
+    @Param({"false", "true"})
+    boolean withPhoto;
+
+    Path photo;
+    ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+
+    @Setup
+    public void setUp() throws IOException {
+        final BufferedImage image = new BufferedImage(1280, 960, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.ORANGE);
+        graphics.fillOval(320, 240, 640, 480);
+        graphics.dispose();
+
+        photo = Files.createTempFile("benchmark", ".jpg");
+        ImageIO.write(image, "jpg", photo.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(photo);
+    }
+
+    @Benchmark
+    public int generateDocument() {
+        out.reset();
+        DocumentUtil.generateDocument("Иванов Иван Иванович", "01.01.2000", "Мужской",
+                withPhoto ? photo.toString() : null, out);
+        return out.size();
+    }
+}
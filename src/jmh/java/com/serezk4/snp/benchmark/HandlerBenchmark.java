@@ -0,0 +1,112 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.database.event.UpdateEventWriter;
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.service.ReactiveUserService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.Handler;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.stream.IntStream;
+
+/**
+ * Processing of an update that is not part of a step session: user lookup, command lookup, the
+ * command itself and the reply, sent to a local Bot API stub. The user comes from a stub service, as
+ * if it were cached, and update events are not written.
+ * <p>
+ * Every processed update sends one message asynchronously; {@link #process} waits once more than
+ * {@code MAX_UNANSWERED} of them are in flight, so the HTTP client's queue does not grow for the
+ * whole run and the score includes the cost of the replies.
+ */
+@State(Scope.Thread)
+public class HandlerBenchmark {
+    private static final long CHAT_ID = 42;
+    private static final Executor DIRECT = Runnable::run;
+    private static final int MAX_UNANSWERED = 64;
+
+    @Param({"5", "20"})
+    int commandCount;
+
+    @Param({"/start", "/start utm_source_telegram", "/last", "hello"})
+    String text;
+
+    BotApiStub stub;
+    Handler handler;
+    UpdateProxy update;
+    long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = new BotApiStub();
+        final Client client = stub.client();
+
+        final List<Command<? extends Session>> commands = IntStream.range(0, commandCount)
+                .<Command<? extends Session>>mapToObj(i -> new Reply(usage(i), client))
+                .toList();
+
+        final User user = User.builder().id(1L).chatId(CHAT_ID).username("user42").build();
+        final ReactiveUserService users = new ReactiveUserService(null, null) {
+            @Override
+            public Mono<User> findOrCreate(final long chatId, final String username, final String utm) {
+                return Mono.just(user);
+            }
+        };
+        final UpdateEventWriter events = new UpdateEventWriter(null, new SimpleMeterRegistry(), false, 1, 1, 1, 1);
+
+        handler = new Handler(commands, users, client, events, null);
+        update = new UpdateProxy(Updates.message(CHAT_ID, 1, text));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public Void process() {
+        final Void result = handler.process(update, DIRECT).join();
+        sent++;
+        while (sent - stub.handled() > MAX_UNANSWERED) Thread.onSpinWait();
+        return result;
+    }
+
+    @Benchmark
+    public Optional<Command<? extends Session>> findCommand() {
+        return handler.findCommand(text);
+    }
+
+    private String usage(final int index) {
+        if (index == 0) return "/start";
+        return index == commandCount - 1 ? "/last" : "/command" + index;
+    }
+
+    private static final class Reply extends Command<Session> {
+        private final Client client;
+
+        Reply(final String usage, final Client client) {
+            super(List.of(usage), "reply", User.Role.USER);
+            this.client = client;
+        }
+
+        @Override
+        public void execute(final UpdateProxy update, final SessionContext sessionContext, final User user) {
+            client.sendMessage(update.getChatId(), "ok");
+        }
+    }
+}
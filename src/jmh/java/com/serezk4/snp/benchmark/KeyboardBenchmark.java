@@ -0,0 +1,38 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.telegram.util.Keyboard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Inline keyboard layout, built for every step that shows buttons.
+ */
+@State(Scope.Thread)
+public class KeyboardBenchmark {
+    @Param({"2", "6", "12"})
+    int buttonCount;
+
+    @Param({"1", "2", "3"})
+    int rowSize;
+
+    List<Keyboard.Inline.Button> buttons;
+
+    @Setup
+    public void setUp() {
+        buttons = IntStream.range(0, buttonCount)
+                .mapToObj(i -> new Keyboard.Inline.Button("Кнопка " + i, "option" + i, null))
+                .toList();
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup getResizableKeyboard() {
+        return Keyboard.Inline.getResizableKeyboard(buttons, rowSize);
+    }
+}
@@ -0,0 +1,105 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.session.SessionContext;
+import com.serezk4.snp.telegram.session.step.Step;
+import com.serezk4.snp.telegram.session.step.StepSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * One questionnaire step: validation of the answer, rendering of the next question and the
+ * Bot API calls it triggers, answered by a local stub.
+ * <p>
+ * An accepted answer moves the session on, so those benchmarks build their session inline rather
+ * than in a per-invocation setup, whose timing overhead would dwarf a step; {@link #firstQuestion}
+ * is the baseline to subtract. A rejected answer leaves the session where it was, so one session
+ * serves a whole iteration.
+ */
+@State(Scope.Thread)
+public class StepSessionBenchmark {
+    private static final long CHAT_ID = 42;
+    private static final String DATE_PATTERN = "^\\d{2}\\.\\d{2}\\.\\d{4}$";
+
+    BotApiStub stub;
+    Client client;
+    User user = User.builder().chatId(CHAT_ID).build();
+
+    UpdateProxy valid = new UpdateProxy(Updates.message(CHAT_ID, 2, "01.01.2000"));
+    UpdateProxy invalid = new UpdateProxy(Updates.message(CHAT_ID, 3, "первое января"));
+
+    UpdateProxy start = new UpdateProxy(Updates.message(CHAT_ID, 1, "/start"));
+
+    StepSession awaitingDate;
+
+    @Setup(Level.Trial)
+    public void startStub() throws IOException {
+        stub = new BotApiStub();
+        client = stub.client();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStub() {
+        stub.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void newSession() {
+        awaitingDate = session();
+        awaitingDate.next(client, start, user);
+    }
+
+    @Benchmark
+    public StepSession.State acceptedAnswer() {
+        final StepSession session = session();
+        session.next(client, start, user);
+        session.next(client, valid, user);
+        return session.getState();
+    }
+
+    @Benchmark
+    public StepSession.State rejectedAnswer() {
+        awaitingDate.next(client, invalid, user);
+        return awaitingDate.getState();
+    }
+
+    @Benchmark
+    public StepSession.State firstQuestion() {
+        final StepSession session = session();
+        session.next(client, start, user);
+        return session.getState();
+    }
+
+    private static StepSession session() {
+        return new StepSession(List.of(
+                new Step((update, user, context) -> Step.Data.builder()
+                        .text("Введите дату рождения в формате <b>ДД.ММ.ГГГГ</b>")
+                        .inputPattern(DATE_PATTERN)
+                        .errorMessage("Неверный формат даты")
+                        .build()),
+                new Step((update, user, context) -> Step.Data.builder()
+                        .text("Дата: <b>%s</b>".formatted(update.getText()))
+                        .build())
+        ), new Noop(), CHAT_ID);
+    }
+
+    private static final class Noop extends Command<StepSession> {
+        Noop() {
+            super(List.of("/start"), "noop", User.Role.USER);
+        }
+
+        @Override
+        public void execute(final UpdateProxy update, final SessionContext sessionContext, final User user) {
+        }
+    }
+}
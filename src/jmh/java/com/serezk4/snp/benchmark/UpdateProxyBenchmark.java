@@ -0,0 +1,47 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Wrapping an update and reading the fields every handler step asks for.
+ */
+@State(Scope.Thread)
+public class UpdateProxyBenchmark {
+    @Param({"message", "callback", "photo"})
+    String kind;
+
+    Update update;
+    UpdateProxy proxy;
+
+    @Setup
+    public void setUp() {
+        update = switch (kind) {
+            case "message" -> Updates.message(42, 7, "/start");
+            case "callback" -> Updates.callback(42, 7, "male");
+            case "photo" -> Updates.photo(42, 7);
+            default -> throw new IllegalArgumentException(kind);
+        };
+        proxy = new UpdateProxy(update);
+    }
+
+    @Benchmark
+    public UpdateProxy construct() {
+        return new UpdateProxy(update);
+    }
+
+    @Benchmark
+    public void getters(final Blackhole blackhole) {
+        blackhole.consume(proxy.getChatId());
+        blackhole.consume(proxy.getText());
+        blackhole.consume(proxy.getUsername());
+        blackhole.consume(proxy.getMessageId());
+        blackhole.consume(proxy.isUserMessage());
+    }
+}
@@ -0,0 +1,51 @@
+package com.serezk4.snp.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Telegram updates shaped like the ones the Bot API delivers.
+ */
+final class Updates {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String CHAT = """
+            "chat": {"id": %d, "type": "private", "username": "user%1$d"},
+            "from": {"id": %1$d, "is_bot": false, "first_name": "User", "username": "user%1$d"}""";
+
+    private Updates() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    static Update message(final long chatId, final int messageId, final String text) {
+        return parse("""
+                {"update_id": %d, "message": {"message_id": %d, "date": 1700000000, %s, "text": "%s"}}"""
+                .formatted(messageId, messageId, CHAT.formatted(chatId), text));
+    }
+
+    static Update photo(final long chatId, final int messageId) {
+        return parse("""
+                {"update_id": %d, "message": {"message_id": %d, "date": 1700000000, %s,
+                 "photo": [{"file_id": "photo", "file_unique_id": "photo", "width": 640, "height": 480}]}}"""
+                .formatted(messageId, messageId, CHAT.formatted(chatId)));
+    }
+
+    static Update callback(final long chatId, final int messageId, final String data) {
+        return parse("""
+                {"update_id": %d, "callback_query": {"id": "%2$d", "chat_instance": "1", "data": "%s",
+                 "from": {"id": %d, "is_bot": false, "first_name": "User", "username": "user%4$d"},
+                 "message": {"message_id": %2$d, "date": 1700000000, %s, "text": "question"}}}"""
+                .formatted(messageId, messageId, data, chatId, CHAT.formatted(chatId)));
+    }
+
+    private static Update parse(final String json) {
+        try {
+            return MAPPER.readValue(json, Update.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
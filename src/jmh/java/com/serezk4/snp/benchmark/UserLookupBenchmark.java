@@ -0,0 +1,79 @@
+package com.serezk4.snp.benchmark;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.repository.ReactiveUserRepository;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/**
+ * Per-update user lookup over JDBC and over R2DBC against a real Postgres.
+ * <p>
+ * Excluded unless Gradle runs with {@code -PjmhDatabase}; connection settings come from the
+ * {@code snp.bench.db.*} system properties and default to the docker-compose database.
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class UserLookupBenchmark {
+    private static final long CHAT_ID = 4_200_000_042L;
+    private static final String FIND_BY_CHAT_ID = """
+            SELECT id, username, chat_id, created_at, account_non_locked, role, utm
+            FROM users
+            WHERE chat_id = ?""";
+
+    HikariDataSource dataSource;
+    JdbcTemplate jdbcTemplate;
+    ConnectionPool connectionPool;
+    ReactiveUserRepository reactiveUserRepository;
+
+    @Setup(Level.Trial)
+    public void connect() {
+        final String host = System.getProperty("snp.bench.db.host", "localhost");
+        final int port = Integer.getInteger("snp.bench.db.port", 5228);
+        final String database = System.getProperty("snp.bench.db.name", "telegram");
+        final String username = System.getProperty("snp.bench.db.username", "telegram_user");
+        final String password = System.getProperty("snp.bench.db.password", "telegram_password");
+
+        final HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:postgresql://%s:%d/%s".formatted(host, port, database));
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(10);
+        dataSource = new HikariDataSource(config);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        connectionPool = (ConnectionPool) ConnectionFactories.get(ConnectionFactoryOptions.parse(
+                "r2dbc:pool:postgresql://%s:%s@%s:%d/%s?maxSize=10".formatted(
+                        username, password, host, port, database)));
+        reactiveUserRepository = new ReactiveUserRepository(DatabaseClient.create(connectionPool));
+
+        reactiveUserRepository.upsert(User.builder().chatId(CHAT_ID).username("benchmark").build()).block();
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() {
+        connectionPool.dispose();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Long jdbc() {
+        return jdbcTemplate.queryForObject(FIND_BY_CHAT_ID, (rs, _) -> rs.getLong("id"), CHAT_ID);
+    }
+
+    @Benchmark
+    public User r2dbc() {
+        return reactiveUserRepository.findByChatId(CHAT_ID).block();
+    }
+}
@@ -0,0 +1,368 @@
+package com.serezk4.snp.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the Telegram Bot API.
+ * <p>
+ * Serves {@code getUpdates} from a queue filled by the driver and answers the methods the bot
+ * uses with plausible payloads. Every call except {@code getUpdates} can be delayed and, with the
+ * configured probability, rejected with {@code 429 Too Many Requests}. Messages the bot sends are
+ * reported to a listener, so the driver can react like a user would.
+ * <p>
+ * Run on its own, it is the Bot API of {@code scripts/startup-timing.sh}: one pending {@code /help}
+ * update and every other call answered at once.
+ */
+final class FakeTelegramServer implements AutoCloseable {
+    private static final Pattern BOT_METHOD = Pattern.compile("^/bot[^/]+/(\\w+)$");
+    private static final Pattern MULTIPART_CHAT_ID =
+            Pattern.compile("name=\"chat_id\"\\r\\n(?:[^\\r\\n]*\\r\\n)*?\\r\\n(-?\\d+)");
+    private static final long MAX_POLL_WAIT_MILLIS = 1000;
+    private static final int STARTUP_TIMING_PORT = 8081;
+    private static final long STARTUP_TIMING_CHAT_ID = 900_000_001L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final long latencyMillis;
+    private final double tooManyRequestsRate;
+    private final byte[] photo;
+
+    private final BlockingQueue<ObjectNode> updates = new LinkedBlockingQueue<>();
+    // a random start, so a run is not taken for a redelivery of the previous one against the same database
+    private final AtomicInteger updateIds = new AtomicInteger(ThreadLocalRandom.current().nextInt(1 << 30));
+    private final AtomicInteger messageIds = new AtomicInteger(1_000_000);
+    private final Map<String, LongAdder> calls = new ConcurrentSkipListMap<>();
+    private final LongAdder throttled = new LongAdder();
+    private final CountDownLatch polled = new CountDownLatch(1);
+
+    private volatile Consumer<BotCall> listener = _ -> {
+    };
+
+    FakeTelegramServer(final long latencyMillis, final double tooManyRequestsRate) throws IOException {
+        this("127.0.0.1", 0, latencyMillis, tooManyRequestsRate);
+    }
+
+    private FakeTelegramServer(
+            final String host,
+            final int port,
+            final long latencyMillis,
+            final double tooManyRequestsRate
+    ) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        this.photo = jpeg();
+
+        server = HttpServer.create(new InetSocketAddress(host, port), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    /**
+     * Serves the startup timing run until killed; it listens on all interfaces, so a bot in a container
+     * reaches it through the host.
+     *
+     * @param args port, {@value #STARTUP_TIMING_PORT} by default.
+     */
+    public static void main(final String... args) throws Exception {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : STARTUP_TIMING_PORT;
+        final FakeTelegramServer server = new FakeTelegramServer("0.0.0.0", port, 0, 0);
+        server.pushText(STARTUP_TIMING_CHAT_ID, "/help");
+
+        System.out.printf("fake Bot API on port %d, one pending update%n", port);
+        Thread.currentThread().join();
+    }
+
+    /**
+     * A message, edit or document the bot sent to a chat.
+     */
+    record BotCall(String method, long chatId, int messageId, String text, List<Button> buttons) {
+    }
+
+    record Button(String text, String callbackData) {
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void onBotCall(final Consumer<BotCall> listener) {
+        this.listener = listener;
+    }
+
+    boolean awaitPolling(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return polled.await(timeout, unit);
+    }
+
+    Map<String, LongAdder> calls() {
+        return calls;
+    }
+
+    long throttled() {
+        return throttled.sum();
+    }
+
+    void pushText(final long chatId, final String text) {
+        final ObjectNode message = message(chatId, messageIds.incrementAndGet());
+        message.put("text", text);
+        push("message", message);
+    }
+
+    void pushPhoto(final long chatId) {
+        final ObjectNode message = message(chatId, messageIds.incrementAndGet());
+        final ArrayNode sizes = message.putArray("photo");
+        for (int scale = 1; scale <= 2; scale++) {
+            sizes.addObject()
+                    .put("file_id", "photo-%d-%d".formatted(chatId, scale))
+                    .put("file_unique_id", "photo-%d-%d".formatted(chatId, scale))
+                    .put("width", 320 * scale)
+                    .put("height", 240 * scale)
+                    .put("file_size", photo.length * scale);
+        }
+        push("message", message);
+    }
+
+    void pushCallback(final long chatId, final int messageId, final String data) {
+        final ObjectNode callback = mapper.createObjectNode()
+                .put("id", String.valueOf(updateIds.get()))
+                .put("chat_instance", String.valueOf(chatId))
+                .put("data", data);
+        callback.set("from", user(chatId));
+        callback.set("message", message(chatId, messageId).put("text", "question"));
+        push("callback_query", callback);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void push(final String type, final ObjectNode payload) {
+        final ObjectNode update = mapper.createObjectNode().put("update_id", updateIds.incrementAndGet());
+        update.set(type, payload);
+        updates.add(update);
+    }
+
+    private ObjectNode message(final long chatId, final int messageId) {
+        final ObjectNode message = mapper.createObjectNode()
+                .put("message_id", messageId)
+                .put("date", System.currentTimeMillis() / 1000);
+        message.putObject("chat").put("id", chatId).put("type", "private").put("username", "user" + chatId);
+        message.set("from", user(chatId));
+        return message;
+    }
+
+    private ObjectNode user(final long chatId) {
+        return mapper.createObjectNode()
+                .put("id", chatId)
+                .put("is_bot", false)
+                .put("first_name", "User")
+                .put("username", "user" + chatId);
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String path = exchange.getRequestURI().getPath();
+            final byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+
+            if (path.startsWith("/file/")) {
+                count("file");
+                delay();
+                respond(exchange, 200, "image/jpeg", photo);
+                return;
+            }
+
+            final Matcher matcher = BOT_METHOD.matcher(path);
+            if (!matcher.matches()) {
+                respond(exchange, 404, "{\"ok\": false, \"error_code\": 404, \"description\": \"Not Found\"}");
+                return;
+            }
+
+            final String method = matcher.group(1);
+            count(method);
+
+            if (method.equals("getUpdates")) {
+                polled.countDown();
+                respond(exchange, 200, ok(getUpdates(params(exchange, body))));
+                return;
+            }
+
+            delay();
+            if (tooManyRequestsRate > 0 && ThreadLocalRandom.current().nextDouble() < tooManyRequestsRate) {
+                throttled.increment();
+                respond(exchange, 429, """
+                        {"ok": false, "error_code": 429, "description": "Too Many Requests: retry after 1",
+                         "parameters": {"retry_after": 1}}""");
+                return;
+            }
+
+            respond(exchange, 200, ok(answer(method, params(exchange, body), body)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private JsonNode getUpdates(final JsonNode params) throws InterruptedException {
+        final int limit = params.path("limit").asInt(100);
+        final long wait = Math.min(TimeUnit.SECONDS.toMillis(params.path("timeout").asLong(0)), MAX_POLL_WAIT_MILLIS);
+
+        final ArrayNode result = mapper.createArrayNode();
+        final ObjectNode first = updates.poll(wait, TimeUnit.MILLISECONDS);
+        if (first == null) return result;
+
+        result.add(first);
+        final List<ObjectNode> rest = new ArrayList<>();
+        updates.drainTo(rest, limit - 1);
+        result.addAll(rest);
+        return result;
+    }
+
+    private JsonNode answer(final String method, final JsonNode params, final byte[] body) {
+        return switch (method) {
+            case "sendMessage", "editMessageText" -> {
+                final long chatId = params.path("chat_id").asLong();
+                final int messageId = method.equals("sendMessage")
+                        ? messageIds.incrementAndGet()
+                        : params.path("message_id").asInt();
+                final String text = params.path("text").asText();
+
+                listener.accept(new BotCall(method, chatId, messageId, text, buttons(params.path("reply_markup"))));
+                yield message(chatId, messageId).put("text", text);
+            }
+            case "sendDocument" -> {
+                final Matcher matcher = MULTIPART_CHAT_ID.matcher(new String(body, StandardCharsets.ISO_8859_1));
+                final long chatId = matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+                final int messageId = messageIds.incrementAndGet();
+
+                listener.accept(new BotCall(method, chatId, messageId, null, List.of()));
+                final ObjectNode message = message(chatId, messageId);
+                message.putObject("document").put("file_id", "document-" + messageId)
+                        .put("file_unique_id", "document-" + messageId)
+                        .put("file_size", body.length);
+                yield message;
+            }
+            case "getFile" -> {
+                final String fileId = params.path("file_id").asText();
+                yield mapper.createObjectNode()
+                        .put("file_id", fileId)
+                        .put("file_unique_id", fileId)
+                        .put("file_size", photo.length)
+                        .put("file_path", "photos/%s.jpg".formatted(fileId));
+            }
+            case "getMe" -> user(0).put("is_bot", true).put("username", "load_test_bot");
+            default -> mapper.getNodeFactory().booleanNode(true);
+        };
+    }
+
+    private List<Button> buttons(final JsonNode markup) {
+        final List<Button> buttons = new ArrayList<>();
+        markup.path("inline_keyboard").forEach(row -> row.forEach(button ->
+                buttons.add(new Button(button.path("text").asText(), button.path("callback_data").asText(null)))));
+        markup.path("keyboard").forEach(row -> row.forEach(button ->
+                buttons.add(new Button(button.path("text").asText(), null))));
+        return buttons;
+    }
+
+    private JsonNode params(final HttpExchange exchange, final byte[] body) throws IOException {
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/json") && body.length > 0) {
+            final JsonNode json = mapper.readTree(body);
+            // the library may send reply_markup as an embedded JSON string
+            if (json.path("reply_markup").isTextual() && json instanceof ObjectNode object) {
+                object.set("reply_markup", mapper.readTree(json.path("reply_markup").asText()));
+            }
+            return json;
+        }
+
+        final ObjectNode params = mapper.createObjectNode();
+        final String query = contentType != null && contentType.startsWith("application/x-www-form-urlencoded")
+                ? new String(body, StandardCharsets.UTF_8)
+                : exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) return params;
+
+        for (String pair : query.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            final String key = URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8);
+            final String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (key.equals("reply_markup")) params.set(key, mapper.readTree(value));
+            else params.put(key, value);
+        }
+        return params;
+    }
+
+    private String ok(final JsonNode result) throws IOException {
+        final ObjectNode response = mapper.createObjectNode().put("ok", true);
+        response.set("result", result);
+        return mapper.writeValueAsString(response);
+    }
+
+    private void count(final String method) {
+        calls.computeIfAbsent(method, _ -> new LongAdder()).increment();
+    }
+
+    private void delay() throws InterruptedException {
+        if (latencyMillis > 0) Thread.sleep(latencyMillis);
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String json) throws IOException {
+        respond(exchange, status, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(
+            final HttpExchange exchange,
+            final int status,
+            final String contentType,
+            final byte[] body
+    ) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] jpeg() {
+        final BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "jpg", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
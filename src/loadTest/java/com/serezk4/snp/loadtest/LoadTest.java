@@ -0,0 +1,222 @@
+package com.serezk4.snp.loadtest;
+
+import com.serezk4.snp.Application;
+import org.springframework.boot.SpringApplication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives synthetic users through the {@code /start} questionnaire of a bot that talks to a
+ * {@link FakeTelegramServer}, then prints throughput, step latencies and Bot API call counts.
+ * <p>
+ * The bot runs in this JVM with the regular configuration, so it needs the docker-compose
+ * Postgres. Settings are read from {@code snp.load.*} system properties:
+ * {@code users}, {@code concurrency}, {@code latency} (ms per Bot API call),
+ * {@code too-many-requests} (share of calls rejected with 429) and {@code step-timeout} (ms).
+ */
+public final class LoadTest {
+    private static final long FIRST_CHAT_ID = 7_000_000_000L;
+
+    private final FakeTelegramServer server;
+    private final int users;
+    private final Semaphore inFlight;
+    private final long stepTimeoutNanos;
+
+    private final Map<Long, SyntheticUser> active = new ConcurrentHashMap<>();
+    private final Map<Step, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder stalled = new LongAdder();
+    private final LongAdder sentUpdates = new LongAdder();
+    private final CountDownLatch finished;
+
+    private LoadTest(final FakeTelegramServer server, final int users, final int concurrency, final long stepTimeout) {
+        this.server = server;
+        this.users = users;
+        this.inFlight = new Semaphore(concurrency);
+        this.stepTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(stepTimeout);
+        this.finished = new CountDownLatch(users);
+
+        for (Step step : Step.values()) latencies.put(step, new ConcurrentLinkedQueue<>());
+        server.onBotCall(this::onBotCall);
+    }
+
+    public static void main(String... args) throws Exception {
+        final int users = Integer.getInteger("snp.load.users", 1000);
+        final int concurrency = Integer.getInteger("snp.load.concurrency", 200);
+        final long latency = Long.getLong("snp.load.latency", 0);
+        final double tooManyRequests = Double.parseDouble(System.getProperty("snp.load.too-many-requests", "0"));
+        final long stepTimeout = Long.getLong("snp.load.step-timeout", 30_000);
+
+        try (FakeTelegramServer server = new FakeTelegramServer(latency, tooManyRequests)) {
+            startBot(server.url(), args);
+            if (!server.awaitPolling(2, TimeUnit.MINUTES)) throw new IllegalStateException("bot did not start polling");
+
+            System.out.printf("driving %d users (%d at a time), api latency %d ms, 429 rate %.3f%n",
+                    users, concurrency, latency, tooManyRequests);
+            new LoadTest(server, users, concurrency, stepTimeout).run();
+        }
+
+        System.exit(0);
+    }
+
+    private static void startBot(final String apiUrl, final String... args) {
+        final String[] arguments = Arrays.copyOf(args, args.length + 2);
+        arguments[args.length] = "--telegram.bot.api-url=" + apiUrl;
+        arguments[args.length + 1] = "--telegram.bot.token=load-test";
+
+        // Application.run blocks for the lifetime of the bot
+        final Thread bot = new Thread(() -> SpringApplication.run(Application.class, arguments), "bot");
+        bot.setDaemon(true);
+        bot.start();
+    }
+
+    private void run() throws InterruptedException {
+        final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        watchdog.scheduleWithFixedDelay(this::expireStalled, 1, 1, TimeUnit.SECONDS);
+
+        final long startedAt = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            inFlight.acquire();
+            final SyntheticUser user = new SyntheticUser(FIRST_CHAT_ID + i);
+            active.put(user.chatId, user);
+            user.start();
+        }
+        finished.await();
+        final double seconds = (System.nanoTime() - startedAt) / 1e9;
+        watchdog.shutdownNow();
+
+        report(seconds);
+    }
+
+    private void onBotCall(final FakeTelegramServer.BotCall call) {
+        final SyntheticUser user = active.get(call.chatId());
+        if (user != null) user.onBotCall(call);
+    }
+
+    private void expireStalled() {
+        final long now = System.nanoTime();
+        active.values().forEach(user -> user.expireIfStalled(now));
+    }
+
+    private void finish(final SyntheticUser user, final boolean success) {
+        if (active.remove(user.chatId) == null) return;
+        (success ? completed : stalled).increment();
+        inFlight.release();
+        finished.countDown();
+    }
+
+    private void report(final double seconds) {
+        System.out.printf("%nusers: %d, completed: %d, stalled: %d, time: %.1f s%n",
+                users, completed.sum(), stalled.sum(), seconds);
+        System.out.printf("throughput: %.1f questionnaires/s, %.1f updates/s%n",
+                completed.sum() / seconds, sentUpdates.sum() / seconds);
+
+        System.out.printf("%nstep latency, ms%n%-12s %8s %8s %8s %8s%n", "step", "count", "p50", "p99", "max");
+        final List<Long> all = new ArrayList<>();
+        for (Step step : Step.values()) {
+            final List<Long> samples = latencies.get(step).stream().sorted().toList();
+            all.addAll(samples);
+            printLatency(step.name().toLowerCase(), samples);
+        }
+        printLatency("all", all.stream().sorted().toList());
+
+        System.out.printf("%nbot api calls%n");
+        server.calls().forEach((method, count) -> System.out.printf("%-20s %10d%n", method, count.sum()));
+        System.out.printf("%-20s %10d%n", "429 injected", server.throttled());
+    }
+
+    private static void printLatency(final String name, final List<Long> sortedNanos) {
+        if (sortedNanos.isEmpty()) {
+            System.out.printf("%-12s %8d %8s %8s %8s%n", name, 0, "-", "-", "-");
+            return;
+        }
+        System.out.printf("%-12s %8d %8.1f %8.1f %8.1f%n", name, sortedNanos.size(),
+                percentile(sortedNanos, 0.50), percentile(sortedNanos, 0.99), sortedNanos.getLast() / 1e6);
+    }
+
+    private static double percentile(final List<Long> sortedNanos, final double quantile) {
+        final int index = (int) Math.ceil(quantile * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(index, 0)) / 1e6;
+    }
+
+    /**
+     * Questionnaire steps, named after the bot message that ends them.
+     */
+    private enum Step {
+        CONSENT, FULL_NAME, BIRTH_DATE, GENDER, PHOTO, SUMMARY, DOCUMENT
+    }
+
+    private final class SyntheticUser {
+        private final long chatId;
+        private int step;
+        private long sentAt;
+
+        private SyntheticUser(final long chatId) {
+            this.chatId = chatId;
+        }
+
+        private synchronized void start() {
+            send(() -> server.pushText(chatId, "/start"));
+        }
+
+        private synchronized void onBotCall(final FakeTelegramServer.BotCall call) {
+            if (sentAt == 0) return;
+
+            final Step current = Step.values()[step];
+            final boolean document = call.method().equals("sendDocument");
+            if (document != (current == Step.DOCUMENT)) return;
+
+            latencies.get(current).add(System.nanoTime() - sentAt);
+            sentAt = 0;
+
+            if (current == Step.DOCUMENT) {
+                finish(this, true);
+                return;
+            }
+
+            step++;
+            switch (current) {
+                case CONSENT -> click(call, "Согласен");
+                case FULL_NAME -> send(() -> server.pushText(chatId, "Иванов Иван Иванович"));
+                case BIRTH_DATE -> send(() -> server.pushText(chatId, "01.01.2000"));
+                case GENDER -> click(call, "Мужской");
+                case PHOTO -> send(() -> server.pushPhoto(chatId));
+                case SUMMARY -> click(call, "Все верно");
+                default -> throw new IllegalStateException("unexpected step " + current);
+            }
+        }
+
+        private synchronized void expireIfStalled(final long now) {
+            if (sentAt != 0 && now - sentAt > stepTimeoutNanos) {
+                sentAt = 0;
+                finish(this, false);
+            }
+        }
+
+        private void click(final FakeTelegramServer.BotCall call, final String text) {
+            call.buttons().stream()
+                    .filter(button -> button.text().equals(text) && button.callbackData() != null)
+                    .findFirst()
+                    .ifPresentOrElse(
+                            button -> send(() -> server.pushCallback(chatId, call.messageId(), button.callbackData())),
+                            () -> finish(this, false));
+        }
+
+        private void send(final Runnable push) {
+            sentAt = System.nanoTime();
+            sentUpdates.increment();
+            push.run();
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.serezk4.snp;
 
+import com.serezk4.snp.startup.StartupTimer;
+import com.serezk4.snp.startup.Warmup;
 import com.serezk4.snp.telegram.bot.Bot;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.cluster.ClusterCoordinator;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
@@ -10,6 +14,7 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.longpolling.util.DefaultGetUpdatesGenerator;
 
 @SpringBootApplication(scanBasePackages = "com.serezk4.snp")
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -17,16 +22,31 @@ import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
 @Log4j2
 public class Application implements ApplicationRunner {
     Bot bot;
+    Client client;
+    ClusterCoordinator clusterCoordinator;
+    Warmup warmup;
+    StartupTimer startupTimer;
 
     public static void main(String... args) {
         SpringApplication.run(Application.class, args);
     }
 
+    /**
+     * Warms up, then starts polling on its own thread: a follower waits there for the poller lock,
+     * and startup completes meanwhile so the instance serves its shards, warm like the poller.
+     */
     @Override
     public void run(ApplicationArguments args) {
+        warmup.run();
+        Thread.ofPlatform().name("poller").start(this::poll);
+    }
+
+    private void poll() {
         try (TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication()) {
+            clusterCoordinator.awaitPollerLeadership();
             log.info("starting bot...");
-            botsApplication.registerBot(bot.getToken(), bot);
+            botsApplication.registerBot(bot.getToken(), client::getTelegramUrl, new DefaultGetUpdatesGenerator(), bot);
+            startupTimer.polling();
             log.info("bot started");
             Thread.currentThread().join();
         } catch (Exception e) {
@@ -0,0 +1,138 @@
+package com.serezk4.snp.database.cache;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.notification.PgNotificationListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Instance-local cache of users by chat id.
+ * <p>
+ * Every change of a {@code users} row is announced on the {@code user_changes} channel by a trigger,
+ * and the affected chat is evicted on every instance, so an admin lock takes effect at once while
+ * reads stay local. The whole cache is dropped whenever the notification connection starts listening,
+ * and entries also expire after a TTL as a safety net.
+ * <p>
+ * An eviction may arrive while a read of the same chat is in flight. Readers therefore take the chat's
+ * {@link #generation} before reading and {@link #put} the result with it; evictions bump the
+ * generation, and a put with an outdated one is discarded. Generations are striped by chat id, so an
+ * eviction of another chat of the stripe only costs an extra miss.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class UserCache {
+    public static final String CHANNEL = "user_changes";
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    long ttlNanos;
+    int maxSize;
+
+    Counter hits;
+    Counter misses;
+    Counter evictions;
+
+    public UserCache(
+            final PgNotificationListener notificationListener,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.cache.users.ttl:600000}") long ttlMillis,
+            final @Value("${telegram.cache.users.max-size:100000}") int maxSize
+    ) {
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.maxSize = maxSize;
+
+        this.hits = meterRegistry.counter("bot.cache.users.hits");
+        this.misses = meterRegistry.counter("bot.cache.users.misses");
+        this.evictions = meterRegistry.counter("bot.cache.users.evictions");
+        meterRegistry.gaugeMapSize("bot.cache.users.size", List.of(), entries);
+
+        notificationListener.subscribe(CHANNEL, this::onChange, this::clear);
+    }
+
+    public User get(final long chatId) {
+        final Entry entry = entries.get(chatId);
+        if (entry == null || entry.expiresAt() - System.nanoTime() < 0) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.user();
+    }
+
+    /**
+     * Returns the cached user without counting a hit or miss, for callers that only need a hint.
+     *
+     * @param chatId chat id.
+     * @return cached user, or {@code null}.
+     */
+    public User peek(final long chatId) {
+        final Entry entry = entries.get(chatId);
+        return entry == null || entry.expiresAt() - System.nanoTime() < 0 ? null : entry.user();
+    }
+
+    /**
+     * @param chatId chat id.
+     * @return token to pass to {@link #put} for a user read from now on.
+     */
+    public long generation(final long chatId) {
+        return generations.get(stripe(chatId));
+    }
+
+    /**
+     * Caches a user unless the chat was evicted since {@code generation} was taken.
+     *
+     * @param user       user read from the database.
+     * @param generation {@link #generation} taken before the read.
+     */
+    public void put(final User user, final long generation) {
+        final int stripe = stripe(user.getChatId());
+        if (generations.get(stripe) != generation) return;
+
+        if (entries.size() >= maxSize) entries.clear();
+        final Entry entry = new Entry(user, System.nanoTime() + ttlNanos);
+        entries.put(user.getChatId(), entry);
+
+        // an eviction between the check and the put has already run, so it is undone here
+        if (generations.get(stripe) != generation) entries.remove(user.getChatId(), entry);
+    }
+
+    public void evict(final long chatId) {
+        generations.incrementAndGet(stripe(chatId));
+        if (entries.remove(chatId) != null) evictions.increment();
+    }
+
+    public void clear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) generations.incrementAndGet(i);
+        log.info("dropping {} cached users", entries.size());
+        entries.clear();
+    }
+
+    private static int stripe(final long chatId) {
+        return (int) ((chatId ^ (chatId >>> 32)) * 0x9E3779B9L >>> 22) & (GENERATION_STRIPES - 1);
+    }
+
+    private void onChange(final String payload) {
+        try {
+            evict(Long.parseLong(payload));
+        } catch (NumberFormatException e) {
+            log.warn("unexpected {} payload: {}", CHANNEL, payload);
+        }
+    }
+
+    private record Entry(User user, long expiresAt) {
+    }
+}
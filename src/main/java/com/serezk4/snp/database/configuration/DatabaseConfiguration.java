@@ -0,0 +1,49 @@
+package com.serezk4.snp.database.configuration;
+
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.ReactiveTransactionManager;
+
+/**
+ * JPA and R2DBC live side by side: JPA serves admin and reporting paths, R2DBC serves the per-update
+ * user lookup. Both transaction managers are declared explicitly so {@code @Transactional} keeps
+ * resolving to JPA.
+ */
+@Configuration
+@Log4j2
+public class DatabaseConfiguration {
+    /**
+     * Skips migrations in the CDS training run of the image build ({@code spring.context.exit=onRefresh}),
+     * which refreshes the context without a database.
+     */
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(final @Value("${spring.context.exit:}") String contextExit) {
+        return flyway -> {
+            if (contextExit.equals("onRefresh")) {
+                log.info("training run, skipping migrations");
+                return;
+            }
+            flyway.migrate();
+        };
+    }
+
+    @Bean
+    @Primary
+    public PlatformTransactionManager transactionManager(final EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    public ReactiveTransactionManager reactiveTransactionManager(final ConnectionFactory connectionFactory) {
+        return new R2dbcTransactionManager(connectionFactory);
+    }
+}
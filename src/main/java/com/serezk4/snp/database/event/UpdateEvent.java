@@ -0,0 +1,30 @@
+package com.serezk4.snp.database.event;
+
+import java.time.Instant;
+
+/**
+ * Row of the {@code update_events} hypertable.
+ *
+ * @param time          when processing finished.
+ * @param chatId        chat the update belongs to.
+ * @param updateId      telegram update id.
+ * @param queryType     kind of the update.
+ * @param command       command that handled the update, if any.
+ * @param step          step of the session reached by the update, if any.
+ * @param latencyMicros processing time.
+ * @param outcome       how processing ended.
+ */
+public record UpdateEvent(
+        Instant time,
+        long chatId,
+        int updateId,
+        String queryType,
+        String command,
+        Integer step,
+        long latencyMicros,
+        Outcome outcome
+) {
+    public enum Outcome {
+        OK, STEP, INVALID, CANCELLED, COMPLETED, LOCKED, UNKNOWN_COMMAND, FORBIDDEN, ERROR
+    }
+}
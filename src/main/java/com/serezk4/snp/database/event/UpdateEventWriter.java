@@ -0,0 +1,163 @@
+package com.serezk4.snp.database.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous, batched writer of {@link UpdateEvent}s.
+ * <p>
+ * {@link #record(UpdateEvent)} never blocks: events go to a bounded queue that a single background
+ * thread drains into {@code COPY update_events FROM STDIN}. Once the queue is three quarters full
+ * only every {@code sample-rate}-th event is kept, and events that do not fit are dropped, so a slow
+ * database never slows down update processing.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class UpdateEventWriter {
+    private static final String COPY = "COPY update_events "
+            + "(time, chat_id, update_id, query_type, command, step, latency_us, outcome) "
+            + "FROM STDIN WITH (FORMAT csv)";
+
+    DataSource dataSource;
+    boolean enabled;
+    int batchSize;
+    long flushInterval;
+    int sampleRate;
+
+    BlockingQueue<UpdateEvent> queue;
+    int highWatermark;
+    AtomicLong sampler = new AtomicLong();
+
+    Counter written;
+    Counter sampled;
+    Counter dropped;
+
+    Thread worker = new Thread(this::drain, "update-events-writer");
+
+    public UpdateEventWriter(
+            final DataSource dataSource,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.events.enabled:true}") boolean enabled,
+            final @Value("${telegram.events.capacity:65536}") int capacity,
+            final @Value("${telegram.events.batch-size:2048}") int batchSize,
+            final @Value("${telegram.events.flush-interval:1000}") long flushInterval,
+            final @Value("${telegram.events.sample-rate:10}") int sampleRate
+    ) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.sampleRate = sampleRate;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.highWatermark = capacity / 4;
+
+        this.written = meterRegistry.counter("bot.events.written");
+        this.sampled = meterRegistry.counter("bot.events.sampled");
+        this.dropped = meterRegistry.counter("bot.events.dropped");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        worker.interrupt();
+        worker.join(flushInterval * 2);
+    }
+
+    public void record(final UpdateEvent event) {
+        if (!enabled) return;
+
+        if (queue.remainingCapacity() < highWatermark && sampler.incrementAndGet() % sampleRate != 0) {
+            sampled.increment();
+            return;
+        }
+
+        if (!queue.offer(event)) dropped.increment();
+    }
+
+    private void drain() {
+        final List<UpdateEvent> batch = new ArrayList<>(batchSize);
+        final StringBuilder csv = new StringBuilder(batchSize * 96);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final UpdateEvent first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                copy(batch, csv);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+                csv.setLength(0);
+            }
+        }
+
+        // flush what is left on shutdown
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) copy(batch, csv);
+    }
+
+    private void copy(final List<UpdateEvent> batch, final StringBuilder csv) {
+        batch.forEach(event -> append(csv, event));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY, new StringReader(csv.toString()));
+            written.increment(batch.size());
+        } catch (Exception e) {
+            dropped.increment(batch.size());
+            log.warn("failed to write {} update events: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private static void append(final StringBuilder csv, final UpdateEvent event) {
+        csv.append(event.time()).append(',')
+                .append(event.chatId()).append(',')
+                .append(event.updateId()).append(',')
+                .append(event.queryType()).append(',');
+        appendQuoted(csv, event.command());
+        csv.append(',');
+        if (event.step() != null) csv.append(event.step());
+        csv.append(',')
+                .append(event.latencyMicros()).append(',')
+                .append(event.outcome().name()).append('\n');
+    }
+
+    private static void appendQuoted(final StringBuilder csv, final String value) {
+        // an unquoted empty field is NULL in csv COPY
+        if (value == null) return;
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') csv.append('"');
+            csv.append(c);
+        }
+        csv.append('"');
+    }
+}
@@ -0,0 +1,102 @@
+package com.serezk4.snp.database.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * Progress of a message sent to every user.
+ * <p>
+ * {@code cursor} is the id of the last user of a page that was fully sent, so a job interrupted by
+ * a crash resends at most one page. The job is run by the process holding its lease
+ * ({@code owner}, {@code leaseExpiresAt}); another one takes it over once the lease expires or is
+ * released.
+ */
+@Entity(name = "broadcast_jobs")
+@Table(name = "broadcast_jobs")
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Builder
+@Accessors(chain = true)
+public final class BroadcastJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "chat_id", nullable = false)
+    @NotNull(message = "chatId.not_null")
+    Long chatId;
+
+    @Column(name = "text", nullable = false)
+    @NotNull(message = "text.null")
+    String text;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    @NotNull(message = "status.null")
+    Status status = Status.RUNNING;
+
+    @Column(name = "cursor_id", nullable = false)
+    @Builder.Default
+    long cursor = 0L;
+
+    @Column(name = "sent", nullable = false)
+    @Builder.Default
+    long sent = 0L;
+
+    @Column(name = "failed", nullable = false)
+    @Builder.Default
+    long failed = 0L;
+
+    @Column(name = "blocked", nullable = false)
+    @Builder.Default
+    long blocked = 0L;
+
+    @Column(name = "owner")
+    String owner;
+
+    @Column(name = "lease_expires_at")
+    OffsetDateTime leaseExpiresAt;
+
+    @Column(name = "created_at", nullable = false)
+    @Builder.Default
+    @NotNull(message = "created.null")
+    OffsetDateTime createdAt = OffsetDateTime.now(ZoneId.systemDefault());
+
+    public enum Status {
+        RUNNING, DONE, CANCELLED
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BroadcastJob that = (BroadcastJob) o;
+        return cursor == that.cursor
+                && sent == that.sent
+                && failed == that.failed
+                && blocked == that.blocked
+                && Objects.equals(id, that.id)
+                && Objects.equals(chatId, that.chatId)
+                && Objects.equals(text, that.text)
+                && status == that.status
+                && Objects.equals(owner, that.owner)
+                && Objects.equals(leaseExpiresAt, that.leaseExpiresAt)
+                && Objects.equals(createdAt, that.createdAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, chatId, text, status, cursor, sent, failed, blocked, owner, leaseExpiresAt, createdAt);
+    }
+}
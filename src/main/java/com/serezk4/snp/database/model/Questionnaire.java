@@ -0,0 +1,75 @@
+package com.serezk4.snp.database.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+@Entity(name = "questionnaires")
+@Table(name = "questionnaires", indexes = @Index(name = "questionnaires_created_at_idx", columnList = "created_at"))
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Builder
+@Accessors(chain = true)
+public final class Questionnaire {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "user_id", nullable = false)
+    @NotNull(message = "userId.not_null")
+    Long userId;
+
+    @Column(name = "chat_id", nullable = false)
+    @NotNull(message = "chatId.not_null")
+    Long chatId;
+
+    @Column(name = "full_name", nullable = false)
+    @NotNull(message = "fullName.not_null")
+    String fullName;
+
+    @Column(name = "birth_date", nullable = false)
+    @NotNull(message = "birthDate.not_null")
+    String birthDate;
+
+    @Column(name = "gender", nullable = false)
+    @NotNull(message = "gender.not_null")
+    String gender;
+
+    @Column(name = "photo_file_id", nullable = false)
+    @NotNull(message = "photoFileId.not_null")
+    String photoFileId;
+
+    @Column(name = "created_at", nullable = false)
+    @Builder.Default
+    @NotNull(message = "created.null")
+    OffsetDateTime createdAt = OffsetDateTime.now(ZoneId.systemDefault());
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Questionnaire that = (Questionnaire) o;
+        return Objects.equals(id, that.id)
+                && Objects.equals(userId, that.userId)
+                && Objects.equals(chatId, that.chatId)
+                && Objects.equals(fullName, that.fullName)
+                && Objects.equals(birthDate, that.birthDate)
+                && Objects.equals(gender, that.gender)
+                && Objects.equals(photoFileId, that.photoFileId)
+                && Objects.equals(createdAt, that.createdAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, userId, chatId, fullName, birthDate, gender, photoFileId, createdAt);
+    }
+}
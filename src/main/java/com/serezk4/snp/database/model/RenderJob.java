@@ -0,0 +1,87 @@
+package com.serezk4.snp.database.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * Progress of a bulk re-render of questionnaires into zip archives.
+ * <p>
+ * {@code cursor} is the id of the last questionnaire included in an archive part that was
+ * uploaded successfully, so a job interrupted by a crash restarts from the next part.
+ */
+@Entity(name = "render_jobs")
+@Table(name = "render_jobs")
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+@Builder
+@Accessors(chain = true)
+public final class RenderJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "chat_id", nullable = false)
+    @NotNull(message = "chatId.not_null")
+    Long chatId;
+
+    @Column(name = "since", nullable = false)
+    @NotNull(message = "since.null")
+    OffsetDateTime since;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    @NotNull(message = "status.null")
+    Status status = Status.RUNNING;
+
+    @Column(name = "cursor_id", nullable = false)
+    @Builder.Default
+    long cursor = 0L;
+
+    @Column(name = "processed", nullable = false)
+    @Builder.Default
+    long processed = 0L;
+
+    @Column(name = "part", nullable = false)
+    @Builder.Default
+    int part = 0;
+
+    @Column(name = "created_at", nullable = false)
+    @Builder.Default
+    @NotNull(message = "created.null")
+    OffsetDateTime createdAt = OffsetDateTime.now(ZoneId.systemDefault());
+
+    public enum Status {
+        RUNNING, DONE, FAILED
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RenderJob renderJob = (RenderJob) o;
+        return cursor == renderJob.cursor
+                && processed == renderJob.processed
+                && part == renderJob.part
+                && Objects.equals(id, renderJob.id)
+                && Objects.equals(chatId, renderJob.chatId)
+                && Objects.equals(since, renderJob.since)
+                && status == renderJob.status
+                && Objects.equals(createdAt, renderJob.createdAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, chatId, since, status, cursor, processed, part, createdAt);
+    }
+}
@@ -0,0 +1,46 @@
+package com.serezk4.snp.database.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.util.Objects;
+
+/**
+ * Per-campaign counters. Rows are maintained by database triggers on {@code users} and
+ * {@code questionnaires}, the application only reads them.
+ */
+@Entity(name = "utm_stats")
+@Table(name = "utm_stats")
+@Immutable
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@ToString
+public final class UtmStats {
+
+    @Id
+    @Column(name = "utm")
+    String utm;
+
+    @Column(name = "registrations", nullable = false)
+    long registrations;
+
+    @Column(name = "completed", nullable = false)
+    long completed;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UtmStats utmStats = (UtmStats) o;
+        return registrations == utmStats.registrations
+                && completed == utmStats.completed
+                && Objects.equals(utm, utmStats.utm);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(utm, registrations, completed);
+    }
+}
@@ -0,0 +1,184 @@
+package com.serezk4.snp.database.notification;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.log4j.Log4j2;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Receives Postgres {@code NOTIFY} messages on a dedicated connection.
+ * <p>
+ * {@code LISTEN} holds its connection for good, so the listener does not borrow one from the pool.
+ * An idle listening connection never writes, so a half-open one would go unnoticed: every
+ * {@code telegram.notifications.keepalive-interval} ms it runs {@code SELECT 1}, and reads time out
+ * after twice that interval. If the connection breaks, the listener reconnects with exponential
+ * backoff and subscribes again. Whenever a channel starts being listened to, on the first connect and
+ * on every reconnect, its subscribers' listen callbacks run, because notifications sent before that
+ * are lost.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class PgNotificationListener {
+    private static final long MIN_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    String url;
+    String username;
+    String password;
+    int pollTimeout;
+    long keepaliveInterval;
+
+    Map<String, List<Consumer<String>>> handlers = new ConcurrentHashMap<>();
+    Map<String, List<Runnable>> listenHandlers = new ConcurrentHashMap<>();
+    Set<String> listening = ConcurrentHashMap.newKeySet();
+
+    Thread worker = new Thread(this::listen, "pg-notification-listener");
+
+    @NonFinal
+    volatile boolean running = true;
+
+    public PgNotificationListener(
+            final @Value("${spring.datasource.url}") String url,
+            final @Value("${spring.datasource.username}") String username,
+            final @Value("${spring.datasource.password}") String password,
+            final @Value("${telegram.notifications.poll-timeout:500}") int pollTimeout,
+            final @Value("${telegram.notifications.keepalive-interval:30000}") long keepaliveInterval
+    ) {
+        if (keepaliveInterval < pollTimeout) {
+            throw new IllegalArgumentException("telegram.notifications.keepalive-interval must exceed poll-timeout");
+        }
+
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.pollTimeout = pollTimeout;
+        this.keepaliveInterval = keepaliveInterval;
+    }
+
+    /**
+     * Subscribes to a channel. Safe to call before or after the listener has connected.
+     *
+     * @param channel  notification channel.
+     * @param handler  receives the payload of every notification.
+     * @param onListen called once the channel is listened to, on every connect: anything the subscriber
+     *                 derived from the database before may have missed notifications.
+     */
+    public void subscribe(final String channel, final Consumer<String> handler, final Runnable onListen) {
+        listenHandlers.computeIfAbsent(channel, _ -> new CopyOnWriteArrayList<>()).add(onListen);
+        handlers.computeIfAbsent(channel, _ -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(pollTimeout * 2L);
+    }
+
+    private void listen() {
+        long backoff = MIN_BACKOFF_MILLIS;
+
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, connectionProperties())) {
+                final PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                listening.clear();
+                log.info("listening for postgres notifications");
+                backoff = MIN_BACKOFF_MILLIS;
+
+                long lastKeepalive = System.nanoTime();
+                while (running) {
+                    subscribePending(connection);
+
+                    final PGNotification[] notifications = pgConnection.getNotifications(pollTimeout);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) dispatch(notification);
+                    }
+
+                    if (System.nanoTime() - lastKeepalive >= TimeUnit.MILLISECONDS.toNanos(keepaliveInterval)) {
+                        keepalive(connection);
+                        lastKeepalive = System.nanoTime();
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                log.warn("notification connection lost: {}, reconnecting in {} ms", e.getMessage(), backoff);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private Properties connectionProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+        properties.setProperty("tcpKeepAlive", "true");
+        // the keepalive query fails instead of hanging on a half-open connection
+        properties.setProperty("socketTimeout", String.valueOf(Math.max(1, keepaliveInterval * 2 / 1000)));
+        return properties;
+    }
+
+    private static void keepalive(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+        }
+    }
+
+    /**
+     * Listens to channels subscribed since the last call, then runs their listen callbacks: only once
+     * {@code LISTEN} is in effect can nothing be missed after the callback.
+     */
+    private void subscribePending(final Connection connection) throws SQLException {
+        for (String channel : handlers.keySet()) {
+            if (listening.contains(channel)) continue;
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + channel);
+            }
+            listening.add(channel);
+            listenHandlers.getOrDefault(channel, List.of()).forEach(PgNotificationListener::runSafely);
+        }
+    }
+
+    private void dispatch(final PGNotification notification) {
+        handlers.getOrDefault(notification.getName(), List.of())
+                .forEach(handler -> runSafely(() -> handler.accept(notification.getParameter())));
+    }
+
+    private static void runSafely(final Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Exception e) {
+            log.error("notification handler failed: {}", e.getMessage(), e);
+        }
+    }
+}
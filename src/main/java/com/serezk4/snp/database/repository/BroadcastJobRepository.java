@@ -0,0 +1,44 @@
+package com.serezk4.snp.database.repository;
+
+import com.serezk4.snp.database.model.BroadcastJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface BroadcastJobRepository extends JpaRepository<BroadcastJob, Long> {
+    List<BroadcastJob> findByStatus(BroadcastJob.Status status);
+
+    @Modifying
+    @Query("""
+            update broadcast_jobs b set b.owner = :owner, b.leaseExpiresAt = :until
+            where b.id = :id and b.status = :status
+              and (b.owner = :owner or b.leaseExpiresAt is null or b.leaseExpiresAt < :now)""")
+    int claim(Long id, BroadcastJob.Status status, String owner, OffsetDateTime now, OffsetDateTime until);
+
+    @Modifying
+    @Query("""
+            update broadcast_jobs b
+            set b.cursor = :cursor, b.sent = :sent, b.failed = :failed, b.blocked = :blocked,
+                b.leaseExpiresAt = :until
+            where b.id = :id and b.owner = :owner and b.status = :status""")
+    int checkpoint(
+            Long id, BroadcastJob.Status status, String owner,
+            long cursor, long sent, long failed, long blocked,
+            OffsetDateTime until
+    );
+
+    @Modifying
+    @Query("""
+            update broadcast_jobs b set b.owner = null, b.leaseExpiresAt = null
+            where b.owner = :owner and b.status = :status""")
+    int release(String owner, BroadcastJob.Status status);
+
+    @Modifying
+    @Query("update broadcast_jobs b set b.status = :status where b.id = :id and b.status = :expected")
+    int updateStatus(Long id, BroadcastJob.Status expected, BroadcastJob.Status status);
+}
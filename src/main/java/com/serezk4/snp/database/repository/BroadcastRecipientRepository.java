@@ -0,0 +1,59 @@
+package com.serezk4.snp.database.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Recipients of broadcasts and the chats that blocked the bot.
+ * <p>
+ * Recipients are read by keyset pages on {@code users.id} and only carry the ids a send needs;
+ * locked users and chats in {@code blocked_chats} are filtered out by the query.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class BroadcastRecipientRepository {
+    private static final String PAGE = """
+            SELECT u.id, u.chat_id
+            FROM users u
+            WHERE u.id > ?
+              AND u.account_non_locked
+              AND NOT EXISTS (SELECT 1 FROM blocked_chats b WHERE b.chat_id = u.chat_id)
+            ORDER BY u.id
+            LIMIT ?""";
+
+    private static final String BLOCK = """
+            INSERT INTO blocked_chats (chat_id)
+            VALUES (?)
+            ON CONFLICT (chat_id) DO UPDATE SET blocked_at = now()""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public BroadcastRecipientRepository(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * @param afterId last user id of the previous page, {@code 0} for the first page.
+     * @param limit   page size.
+     * @return recipients ordered by user id.
+     */
+    public List<Recipient> findPage(final long afterId, final int limit) {
+        return jdbcTemplate.query(PAGE, (rs, _) -> new Recipient(rs.getLong(1), rs.getLong(2)), afterId, limit);
+    }
+
+    public void block(final long chatId) {
+        jdbcTemplate.update(BLOCK, chatId);
+    }
+
+    public void unblock(final long chatId) {
+        jdbcTemplate.update("DELETE FROM blocked_chats WHERE chat_id = ?", chatId);
+    }
+
+    public record Recipient(long userId, long chatId) {
+    }
+}
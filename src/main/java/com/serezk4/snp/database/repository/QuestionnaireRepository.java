@@ -0,0 +1,22 @@
+package com.serezk4.snp.database.repository;
+
+import com.serezk4.snp.database.model.Questionnaire;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface QuestionnaireRepository extends JpaRepository<Questionnaire, Long> {
+    List<Questionnaire> findByIdGreaterThanAndCreatedAtGreaterThanEqualOrderByIdAsc(
+            Long id,
+            OffsetDateTime since,
+            Limit limit
+    );
+
+    long countByIdGreaterThanAndCreatedAtGreaterThanEqual(Long id, OffsetDateTime since);
+
+    boolean existsByChatId(Long chatId);
+}
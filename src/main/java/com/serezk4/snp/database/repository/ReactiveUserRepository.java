@@ -0,0 +1,82 @@
+package com.serezk4.snp.database.repository;
+
+import com.serezk4.snp.database.model.User;
+import io.r2dbc.spi.Readable;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Non-blocking access to {@code users} for the per-update hot path.
+ * <p>
+ * Uses plain SQL over {@link DatabaseClient} instead of a Spring Data repository, so the
+ * {@link User} entity stays owned by JPA and the two stacks do not compete for it.
+ */
+@Repository
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ReactiveUserRepository {
+    private static final String COLUMNS = "id, username, chat_id, created_at, account_non_locked, role, utm";
+
+    private static final String FIND_BY_CHAT_ID = "SELECT " + COLUMNS + " FROM users WHERE chat_id = :chatId";
+
+    // "DO UPDATE" instead of "DO NOTHING" so RETURNING yields the existing row on conflict
+    private static final String UPSERT = """
+            INSERT INTO users (username, chat_id, created_at, account_non_locked, role, utm)
+            VALUES (:username, :chatId, :createdAt, :accountNonLocked, :role, :utm)
+            ON CONFLICT (chat_id) DO UPDATE SET chat_id = EXCLUDED.chat_id
+            RETURNING\s""" + COLUMNS;
+
+    DatabaseClient databaseClient;
+
+    public Mono<User> findByChatId(final long chatId) {
+        return databaseClient.sql(FIND_BY_CHAT_ID)
+                .bind("chatId", chatId)
+                .map(ReactiveUserRepository::map)
+                .one();
+    }
+
+    /**
+     * Inserts the user unless the chat is already registered.
+     *
+     * @param user user to insert.
+     * @return the stored row, either the inserted one or the one that already existed.
+     */
+    public Mono<User> upsert(final User user) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(UPSERT)
+                .bind("chatId", user.getChatId())
+                .bind("createdAt", user.getCreatedAt())
+                .bind("accountNonLocked", user.isAccountNonLocked())
+                .bind("role", user.getRole().ordinal());
+
+        spec = bindNullable(spec, "username", user.getUsername());
+        spec = bindNullable(spec, "utm", user.getUtm());
+
+        return spec.map(ReactiveUserRepository::map).one();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindNullable(
+            final DatabaseClient.GenericExecuteSpec spec,
+            final String name,
+            final String value
+    ) {
+        return value == null ? spec.bindNull(name, String.class) : spec.bind(name, value);
+    }
+
+    private static User map(final Readable row) {
+        return User.builder()
+                .id(row.get("id", Long.class))
+                .username(row.get("username", String.class))
+                .chatId(row.get("chat_id", Long.class))
+                .createdAt(row.get("created_at", OffsetDateTime.class))
+                .accountNonLocked(Boolean.TRUE.equals(row.get("account_non_locked", Boolean.class)))
+                .role(User.Role.values()[row.get("role", Integer.class)])
+                .utm(row.get("utm", String.class))
+                .build();
+    }
+}
@@ -0,0 +1,12 @@
+package com.serezk4.snp.database.repository;
+
+import com.serezk4.snp.database.model.RenderJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RenderJobRepository extends JpaRepository<RenderJob, Long> {
+    List<RenderJob> findByStatus(RenderJob.Status status);
+}
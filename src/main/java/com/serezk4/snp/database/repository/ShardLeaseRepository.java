@@ -0,0 +1,94 @@
+package com.serezk4.snp.database.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.util.List;
+
+/**
+ * Cluster membership and chat shard leases.
+ * <p>
+ * A lease is only taken over when it has expired or already belongs to the caller, so a shard
+ * never has two live owners as long as owners stop processing before their lease runs out.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ShardLeaseRepository {
+    private static final String HEARTBEAT = """
+            INSERT INTO cluster_members (instance_id, heartbeat_at)
+            VALUES (?, now())
+            ON CONFLICT (instance_id) DO UPDATE SET heartbeat_at = EXCLUDED.heartbeat_at""";
+
+    private static final String LIVE_MEMBERS = """
+            SELECT instance_id
+            FROM cluster_members
+            WHERE heartbeat_at > now() - make_interval(secs => ? / 1000.0)
+            ORDER BY instance_id""";
+
+    private static final String CLAIM = """
+            INSERT INTO shard_leases (shard, owner, expires_at)
+            SELECT shard, ?, now() + make_interval(secs => ? / 1000.0)
+            FROM unnest(?::int[]) AS shard
+            ON CONFLICT (shard) DO UPDATE SET owner = EXCLUDED.owner, expires_at = EXCLUDED.expires_at
+            WHERE shard_leases.owner = EXCLUDED.owner OR shard_leases.expires_at < now()
+            RETURNING shard""";
+
+    private static final String RELEASE = """
+            UPDATE shard_leases
+            SET expires_at = now()
+            WHERE owner = ? AND expires_at > now() AND NOT shard = ANY (?::int[])""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public ShardLeaseRepository(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public void heartbeat(final String instanceId) {
+        jdbcTemplate.update(HEARTBEAT, instanceId);
+    }
+
+    public List<String> findLiveMembers(final long ttlMillis) {
+        return jdbcTemplate.queryForList(LIVE_MEMBERS, String.class, ttlMillis);
+    }
+
+    /**
+     * Takes or renews leases of the given shards.
+     *
+     * @param instanceId owner.
+     * @param shards     shards to lease.
+     * @param ttlMillis  lease duration.
+     * @return shards that are now leased by the owner.
+     */
+    public List<Integer> claim(final String instanceId, final Integer[] shards, final long ttlMillis) {
+        return jdbcTemplate.query(CLAIM, ps -> {
+            final Array array = ps.getConnection().createArrayOf("integer", shards);
+            ps.setString(1, instanceId);
+            ps.setLong(2, ttlMillis);
+            ps.setArray(3, array);
+        }, (rs, _) -> rs.getInt(1));
+    }
+
+    /**
+     * Expires every lease of the owner except the given shards, so other members can take them.
+     *
+     * @param instanceId owner.
+     * @param keep       shards to keep.
+     * @return number of released shards.
+     */
+    public int releaseExcept(final String instanceId, final Integer[] keep) {
+        return jdbcTemplate.update(RELEASE, ps -> {
+            ps.setString(1, instanceId);
+            ps.setArray(2, ps.getConnection().createArrayOf("integer", keep));
+        });
+    }
+
+    public void leave(final String instanceId) {
+        releaseExcept(instanceId, new Integer[0]);
+        jdbcTemplate.update("DELETE FROM cluster_members WHERE instance_id = ?", instanceId);
+    }
+}
@@ -0,0 +1,83 @@
+package com.serezk4.snp.database.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Pending timers, see {@link com.serezk4.snp.telegram.timer.TimerService}.
+ * <p>
+ * A timer is identified by its id and due time: rescheduling keeps the id and moves {@code due_at},
+ * so a stale copy of the timer can no longer claim the row.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TimerRepository {
+    private static final String UPSERT = """
+            INSERT INTO timers (chat_id, kind, payload, due_at)
+            VALUES (?, ?, ?, ?)
+            ON CONFLICT (chat_id, kind) DO UPDATE SET payload = EXCLUDED.payload, due_at = EXCLUDED.due_at
+            RETURNING id""";
+
+    private static final String DUE_PAGE = """
+            SELECT id, chat_id, kind, payload, due_at
+            FROM timers
+            WHERE due_at < ? AND id > ?
+            ORDER BY id
+            LIMIT ?""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public TimerRepository(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Schedules the chat's timer of the kind, replacing a pending one.
+     *
+     * @return timer id.
+     */
+    public long upsert(final long chatId, final String kind, final String payload, final Instant dueAt) {
+        final Long id = jdbcTemplate.queryForObject(UPSERT, Long.class, chatId, kind, payload, Timestamp.from(dueAt));
+        if (id == null) throw new IllegalStateException("timer was not stored");
+        return id;
+    }
+
+    /**
+     * Takes the timer for running.
+     *
+     * @return {@code true} if the timer was still pending with this due time and is now removed.
+     */
+    public boolean claim(final long id, final Instant dueAt) {
+        return jdbcTemplate.update("DELETE FROM timers WHERE id = ? AND due_at = ?", id, Timestamp.from(dueAt)) > 0;
+    }
+
+    public void delete(final long chatId, final String kind) {
+        jdbcTemplate.update("DELETE FROM timers WHERE chat_id = ? AND kind = ?", chatId, kind);
+    }
+
+    /**
+     * @param before  due time bound, exclusive.
+     * @param afterId last id of the previous page, {@code 0} for the first page.
+     * @param limit   page size.
+     * @return timers due before the bound, ordered by id.
+     */
+    public List<Row> findDue(final Instant before, final long afterId, final int limit) {
+        return jdbcTemplate.query(DUE_PAGE, (rs, _) -> new Row(
+                rs.getLong("id"),
+                rs.getLong("chat_id"),
+                rs.getString("kind"),
+                rs.getString("payload"),
+                rs.getTimestamp("due_at").toInstant()
+        ), Timestamp.from(before), afterId, limit);
+    }
+
+    public record Row(long id, long chatId, String kind, String payload, Instant dueAt) {
+    }
+}
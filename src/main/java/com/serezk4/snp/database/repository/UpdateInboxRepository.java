@@ -0,0 +1,93 @@
+package com.serezk4.snp.database.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Updates forwarded from the polling instance to the owners of their chat shards.
+ * <p>
+ * A consumer claims rows for a while and deletes them once they are processed; rows of a consumer
+ * that died are claimed again when the claim expires, so an update is processed at least once.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UpdateInboxRepository {
+    public static final String CHANNEL = "update_inbox";
+
+    private static final String CLAIM = """
+            UPDATE update_inbox
+            SET claimed_by = ?, claimed_until = now() + ? * interval '1 millisecond'
+            WHERE id IN (SELECT id
+                         FROM update_inbox
+                         WHERE shard = ANY (?::int[])
+                           AND (claimed_until IS NULL OR claimed_until < now())
+                         ORDER BY id
+                         LIMIT ? FOR UPDATE SKIP LOCKED)
+            RETURNING id, shard, payload""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public UpdateInboxRepository(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Stores updates and wakes up the listening members once the transaction commits.
+     *
+     * @param entries shard and serialized update.
+     */
+    @Transactional
+    public void append(final List<Entry> entries) {
+        jdbcTemplate.batchUpdate("INSERT INTO update_inbox (shard, payload) VALUES (?, ?)", entries, entries.size(),
+                (ps, entry) -> {
+                    ps.setInt(1, entry.shard());
+                    ps.setString(2, entry.payload());
+                });
+        jdbcTemplate.execute("NOTIFY " + CHANNEL);
+    }
+
+    /**
+     * Claims the oldest unclaimed updates of the given shards, in arrival order. Rows stay claimed
+     * until {@link #acknowledge acknowledged} or until the claim expires.
+     *
+     * @param shards   shards owned by the caller.
+     * @param limit    maximum number of updates.
+     * @param claimant caller's identity; it must differ between runs of the same instance.
+     * @param ttl      claim duration in milliseconds.
+     * @return claimed updates.
+     */
+    public List<Entry> claim(final Integer[] shards, final int limit, final String claimant, final long ttl) {
+        return jdbcTemplate.query(CLAIM, ps -> {
+                    ps.setString(1, claimant);
+                    ps.setLong(2, ttl);
+                    ps.setArray(3, ps.getConnection().createArrayOf("integer", shards));
+                    ps.setInt(4, limit);
+                }, (rs, _) -> new Entry(rs.getLong("id"), rs.getInt("shard"), rs.getString("payload")))
+                .stream()
+                .sorted(Comparator.comparingLong(Entry::id))
+                .toList();
+    }
+
+    /**
+     * Deletes processed updates, unless their claim expired and was taken over meanwhile.
+     *
+     * @param ids      ids of processed updates.
+     * @param claimant identity the updates were claimed with.
+     */
+    public void acknowledge(final List<Long> ids, final String claimant) {
+        jdbcTemplate.update("DELETE FROM update_inbox WHERE id = ANY (?::bigint[]) AND claimed_by = ?", ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+            ps.setString(2, claimant);
+        });
+    }
+
+    public record Entry(long id, int shard, String payload) {
+    }
+}
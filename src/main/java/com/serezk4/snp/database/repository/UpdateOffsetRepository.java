@@ -0,0 +1,43 @@
+package com.serezk4.snp.database.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * High-water marks of received update ids, see {@link com.serezk4.snp.telegram.bot.UpdateDeduplicator}.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UpdateOffsetRepository {
+    private static final String SAVE = """
+            INSERT INTO update_offsets (bot_id, high_water, updated_at)
+            VALUES (?, ?, now())
+            ON CONFLICT (bot_id) DO UPDATE SET high_water = EXCLUDED.high_water, updated_at = EXCLUDED.updated_at""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public UpdateOffsetRepository(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * @param maxAge age after which a mark is ignored.
+     * @return the bot's mark, if saved within {@code maxAge}.
+     */
+    public Optional<Long> findHighWater(final String botId, final Duration maxAge) {
+        return jdbcTemplate.queryForList("""
+                        SELECT high_water FROM update_offsets
+                        WHERE bot_id = ? AND updated_at > now() - ? * interval '1 millisecond'""",
+                Long.class, botId, maxAge.toMillis()).stream().findFirst();
+    }
+
+    public void save(final String botId, final long highWater) {
+        jdbcTemplate.update(SAVE, botId, highWater);
+    }
+}
@@ -0,0 +1,57 @@
+package com.serezk4.snp.database.repository;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+
+/**
+ * Streams {@code users} rows without materializing entities.
+ * <p>
+ * Rows are read by keyset pages on {@code id}; every page runs in its own short read-only
+ * transaction, which also lets the driver honour the fetch size and pull rows from the server
+ * cursor in chunks instead of buffering the whole page.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserExportRepository {
+    private static final String PAGE = """
+            SELECT id, chat_id, username, created_at, account_non_locked, role, utm
+            FROM users
+            WHERE id > ?
+            ORDER BY id
+            LIMIT ?""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public UserExportRepository(
+            final DataSource dataSource,
+            final @Value("${telegram.export.fetch-size:1000}") int fetchSize
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Passes every row of the page that follows {@code afterId} to the handler.
+     *
+     * @param afterId last id of the previous page, {@code 0} for the first page.
+     * @param limit   page size.
+     * @param handler row consumer.
+     * @return id of the last row of the page, or {@code -1} if the page is empty.
+     */
+    @Transactional(readOnly = true)
+    public long streamPage(final long afterId, final int limit, final RowCallbackHandler handler) {
+        final long[] lastId = {-1L};
+        jdbcTemplate.query(PAGE, rs -> {
+            handler.processRow(rs);
+            lastId[0] = rs.getLong("id");
+        }, afterId, limit);
+        return lastId[0];
+    }
+}
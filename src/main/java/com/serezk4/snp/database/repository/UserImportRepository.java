@@ -0,0 +1,78 @@
+package com.serezk4.snp.database.repository;
+
+import com.serezk4.snp.database.model.User;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Bulk inserts of imported users.
+ * <p>
+ * A chunk is sent as one statement over {@code unnest}ed column arrays, and chats that are already
+ * registered, including ones registering while the import runs, are skipped by the unique key rather
+ * than failing the chunk. Ids come from the identity default, see {@code V4__users_pooled_sequence}.
+ */
+@Repository
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class UserImportRepository {
+    private static final String INSERT = """
+            INSERT INTO users (chat_id, username, created_at, account_non_locked, role, utm)
+            SELECT *
+            FROM unnest(?::bigint[], ?::varchar[], ?::timestamptz[], ?::boolean[], ?::smallint[], ?::varchar[])
+            ON CONFLICT (chat_id) DO NOTHING""";
+
+    JdbcTemplate jdbcTemplate;
+
+    public UserImportRepository(final DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * @param users users to insert; ids are ignored.
+     * @return number of inserted users.
+     */
+    public int insertMissing(final Collection<User> users) {
+        if (users.isEmpty()) return 0;
+
+        final int size = users.size();
+        final Long[] chatIds = new Long[size];
+        final String[] usernames = new String[size];
+        final String[] createdAt = new String[size];
+        final Boolean[] accountNonLocked = new Boolean[size];
+        final Short[] roles = new Short[size];
+        final String[] utms = new String[size];
+
+        int i = 0;
+        for (User user : users) {
+            chatIds[i] = user.getChatId();
+            usernames[i] = user.getUsername();
+            createdAt[i] = user.getCreatedAt().toString();
+            accountNonLocked[i] = user.isAccountNonLocked();
+            roles[i] = (short) user.getRole().ordinal();
+            utms[i] = user.getUtm();
+            i++;
+        }
+
+        return jdbcTemplate.update(INSERT, ps -> {
+            final Connection connection = ps.getConnection();
+            ps.setArray(1, array(connection, "bigint", chatIds));
+            ps.setArray(2, array(connection, "varchar", usernames));
+            ps.setArray(3, array(connection, "varchar", createdAt));
+            ps.setArray(4, array(connection, "boolean", accountNonLocked));
+            ps.setArray(5, array(connection, "smallint", roles));
+            ps.setArray(6, array(connection, "varchar", utms));
+        });
+    }
+
+    private static Array array(final Connection connection, final String type, final Object[] values)
+            throws SQLException {
+        return connection.createArrayOf(type, values);
+    }
+}
@@ -2,6 +2,8 @@ package com.serezk4.snp.database.repository;
 
 import com.serezk4.snp.database.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -9,4 +11,8 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByChatId(Long chatId);
+
+    @Modifying
+    @Query("update users u set u.accountNonLocked = :accountNonLocked where u.chatId = :chatId")
+    int updateAccountNonLocked(Long chatId, boolean accountNonLocked);
 }
@@ -0,0 +1,87 @@
+package com.serezk4.snp.database.service;
+
+import com.serezk4.snp.database.model.BroadcastJob;
+import com.serezk4.snp.database.repository.BroadcastJobRepository;
+import com.serezk4.snp.database.repository.BroadcastRecipientRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional(rollbackFor = Exception.class, isolation = Isolation.READ_COMMITTED)
+public class BroadcastService {
+    BroadcastJobRepository broadcastJobRepository;
+    BroadcastRecipientRepository broadcastRecipientRepository;
+
+    public BroadcastJob save(BroadcastJob job) {
+        return broadcastJobRepository.save(job);
+    }
+
+    @Transactional(readOnly = true)
+    public List<BroadcastJob> findRunning() {
+        return broadcastJobRepository.findByStatus(BroadcastJob.Status.RUNNING);
+    }
+
+    /**
+     * Takes or renews the lease of a running job.
+     *
+     * @return {@code true} if the job is running and now leased by the owner.
+     */
+    public boolean claim(Long id, String owner, Duration leaseTtl) {
+        final OffsetDateTime now = OffsetDateTime.now(ZoneId.systemDefault());
+        return broadcastJobRepository.claim(id, BroadcastJob.Status.RUNNING, owner, now, now.plus(leaseTtl)) > 0;
+    }
+
+    /**
+     * Persists the progress of a job and renews its lease.
+     *
+     * @return {@code false} if the job was cancelled or taken over and must not be continued.
+     */
+    public boolean checkpoint(BroadcastJob job, String owner, Duration leaseTtl) {
+        return broadcastJobRepository.checkpoint(
+                job.getId(), BroadcastJob.Status.RUNNING, owner,
+                job.getCursor(), job.getSent(), job.getFailed(), job.getBlocked(),
+                OffsetDateTime.now(ZoneId.systemDefault()).plus(leaseTtl)
+        ) > 0;
+    }
+
+    /**
+     * Gives up the leases of the owner's running jobs, so any instance may take them over at once.
+     *
+     * @return number of released jobs.
+     */
+    public int release(String owner) {
+        return broadcastJobRepository.release(owner, BroadcastJob.Status.RUNNING);
+    }
+
+    public boolean finish(Long id) {
+        return broadcastJobRepository.updateStatus(id, BroadcastJob.Status.RUNNING, BroadcastJob.Status.DONE) > 0;
+    }
+
+    public boolean cancel(Long id) {
+        return broadcastJobRepository.updateStatus(id, BroadcastJob.Status.RUNNING, BroadcastJob.Status.CANCELLED) > 0;
+    }
+
+    @Transactional(readOnly = true)
+    public List<BroadcastRecipientRepository.Recipient> findRecipients(long afterId, int limit) {
+        return broadcastRecipientRepository.findPage(afterId, limit);
+    }
+
+    /**
+     * Records whether the chat blocked the bot; blocked chats are skipped by broadcasts.
+     */
+    public void setBlocked(long chatId, boolean blocked) {
+        if (blocked) broadcastRecipientRepository.block(chatId);
+        else broadcastRecipientRepository.unblock(chatId);
+    }
+}
@@ -0,0 +1,42 @@
+package com.serezk4.snp.database.service;
+
+import com.serezk4.snp.database.model.Questionnaire;
+import com.serezk4.snp.database.repository.QuestionnaireRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional(rollbackFor = Exception.class, isolation = Isolation.READ_COMMITTED)
+public class QuestionnaireService {
+    QuestionnaireRepository questionnaireRepository;
+
+    public Questionnaire save(Questionnaire questionnaire) {
+        return questionnaireRepository.save(questionnaire);
+    }
+
+    @Transactional(readOnly = true)
+    public List<Questionnaire> findPage(long afterId, OffsetDateTime since, int limit) {
+        return questionnaireRepository.findByIdGreaterThanAndCreatedAtGreaterThanEqualOrderByIdAsc(
+                afterId, since, Limit.of(limit));
+    }
+
+    @Transactional(readOnly = true)
+    public long count(long afterId, OffsetDateTime since) {
+        return questionnaireRepository.countByIdGreaterThanAndCreatedAtGreaterThanEqual(afterId, since);
+    }
+
+    @Transactional(readOnly = true)
+    public boolean existsByChatId(long chatId) {
+        return questionnaireRepository.existsByChatId(chatId);
+    }
+}
@@ -0,0 +1,46 @@
+package com.serezk4.snp.database.service;
+
+import com.serezk4.snp.database.cache.UserCache;
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.repository.ReactiveUserRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public class ReactiveUserService {
+    ReactiveUserRepository reactiveUserRepository;
+    UserCache userCache;
+
+    public Mono<User> findByChatId(final long chatId) {
+        final User cached = userCache.get(chatId);
+        if (cached != null) return Mono.just(cached);
+
+        return Mono.defer(() -> {
+            final long generation = userCache.generation(chatId);
+            return reactiveUserRepository.findByChatId(chatId)
+                    .doOnNext(user -> userCache.put(user, generation));
+        });
+    }
+
+    public Mono<User> findOrCreate(final long chatId, final String username, final String utm) {
+        final User cached = userCache.get(chatId);
+        if (cached != null) return Mono.just(cached);
+
+        return Mono.defer(() -> {
+            // taken before the read: an eviction that races with it must win over what was read
+            final long generation = userCache.generation(chatId);
+            return reactiveUserRepository.findByChatId(chatId)
+                    .switchIfEmpty(Mono.defer(() -> reactiveUserRepository.upsert(User.builder()
+                            .chatId(chatId)
+                            .username(username)
+                            .utm(utm)
+                            .build())))
+                    .doOnNext(user -> userCache.put(user, generation));
+        });
+    }
+}
@@ -0,0 +1,29 @@
+package com.serezk4.snp.database.service;
+
+import com.serezk4.snp.database.model.RenderJob;
+import com.serezk4.snp.database.repository.RenderJobRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional(rollbackFor = Exception.class, isolation = Isolation.READ_COMMITTED)
+public class RenderJobService {
+    RenderJobRepository renderJobRepository;
+
+    public RenderJob save(RenderJob renderJob) {
+        return renderJobRepository.save(renderJob);
+    }
+
+    @Transactional(readOnly = true)
+    public List<RenderJob> findRunning() {
+        return renderJobRepository.findByStatus(RenderJob.Status.RUNNING);
+    }
+}
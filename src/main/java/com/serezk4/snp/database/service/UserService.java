@@ -1,6 +1,7 @@
 package com.serezk4.snp.database.service;
 
 import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.repository.UserImportRepository;
 import com.serezk4.snp.database.repository.UserRepository;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -9,6 +10,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -17,6 +21,7 @@ import java.util.Optional;
 @Transactional(rollbackFor = Exception.class, isolation = Isolation.READ_COMMITTED)
 public class UserService {
     UserRepository userRepository;
+    UserImportRepository userImportRepository;
 
     public Optional<User> findByChatId(Long chatId) {
         return userRepository.findByChatId(chatId);
@@ -25,4 +30,29 @@ public class UserService {
     public User save(User user) {
         return userRepository.save(user);
     }
+
+    /**
+     * Locks or unlocks a user. Other instances drop the user from their caches on commit,
+     * see {@link com.serezk4.snp.database.cache.UserCache}.
+     *
+     * @param chatId chat id of the user.
+     * @param locked whether the user is locked.
+     * @return {@code true} if the user exists.
+     */
+    public boolean setLocked(Long chatId, boolean locked) {
+        return userRepository.updateAccountNonLocked(chatId, !locked) > 0;
+    }
+
+    /**
+     * Inserts a chunk of users in one statement, skipping chats that are already registered, also
+     * when they register concurrently.
+     *
+     * @param users users to insert.
+     * @return number of inserted users.
+     */
+    public int importChunk(Collection<User> users) {
+        final Map<Long, User> byChatId = new LinkedHashMap<>();
+        users.forEach(user -> byChatId.putIfAbsent(user.getChatId(), user));
+        return userImportRepository.insertMissing(byChatId.values());
+    }
 }
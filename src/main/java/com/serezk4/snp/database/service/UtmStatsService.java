@@ -0,0 +1,24 @@
+package com.serezk4.snp.database.service;
+
+import com.serezk4.snp.database.model.UtmStats;
+import com.serezk4.snp.database.repository.UtmStatsRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional(readOnly = true, rollbackFor = Exception.class, isolation = Isolation.READ_COMMITTED)
+public class UtmStatsService {
+    UtmStatsRepository utmStatsRepository;
+
+    public List<UtmStats> findAll() {
+        return utmStatsRepository.findAllByOrderByRegistrationsDesc();
+    }
+}
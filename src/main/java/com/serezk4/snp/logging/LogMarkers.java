@@ -0,0 +1,19 @@
+package com.serezk4.snp.logging;
+
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+/**
+ * Markers that logging configuration selects events by.
+ */
+public final class LogMarkers {
+    /**
+     * Events logged for every update, or every Bot API call made for one; {@link SamplingFilter}
+     * keeps only a share of them. Lifecycle and incident logs must not carry it.
+     */
+    public static final Marker PER_UPDATE = MarkerManager.getMarker("PER_UPDATE");
+
+    private LogMarkers() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+}
@@ -0,0 +1,160 @@
+package com.serezk4.snp.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.message.Message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one in {@code rate} events at {@code level} or below that carry the {@code marker}, counted
+ * separately per logger; other events, lifecycle and incident logs among them, pass untouched.
+ * <p>
+ * Meant as a context-wide filter: it is then consulted on the calling thread before the message is
+ * formatted or handed to the async ring buffer, so dropped events cost a counter increment.
+ * <pre>{@code
+ * <SamplingFilter marker="PER_UPDATE" rate="10" level="INFO"/>
+ * }</pre>
+ *
+ * @see LogMarkers#PER_UPDATE
+ */
+@Plugin(name = "SamplingFilter", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
+public final class SamplingFilter extends AbstractFilter {
+    private final Marker marker;
+    private final long rate;
+    private final Level level;
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private SamplingFilter(final Marker marker, final long rate, final Level level) {
+        super(Result.NEUTRAL, Result.DENY);
+        this.marker = marker;
+        this.rate = rate;
+        this.level = level;
+    }
+
+    @PluginFactory
+    public static SamplingFilter createFilter(
+            @PluginAttribute("marker") final String marker,
+            @PluginAttribute(value = "rate", defaultLong = 1) final long rate,
+            @PluginAttribute("level") final Level level
+    ) {
+        if (marker == null || marker.isBlank()) {
+            throw new IllegalArgumentException("SamplingFilter marker is required");
+        }
+        if (rate < 1) throw new IllegalArgumentException("SamplingFilter rate must be positive");
+
+        return new SamplingFilter(
+                MarkerManager.getMarker(marker.trim()),
+                rate,
+                level == null ? Level.INFO : level
+        );
+    }
+
+    private Result sample(final String loggerName, final Level eventLevel, final Marker eventMarker) {
+        if (rate == 1 || eventLevel.isMoreSpecificThan(Level.WARN) || !eventLevel.isLessSpecificThan(level)) {
+            return Result.NEUTRAL;
+        }
+        if (eventMarker == null || !eventMarker.isInstanceOf(marker)) return Result.NEUTRAL;
+
+        AtomicLong counter = counters.get(loggerName);
+        if (counter == null) counter = counters.computeIfAbsent(loggerName, _ -> new AtomicLong());
+
+        return counter.getAndIncrement() % rate == 0 ? onMatch : onMismatch;
+    }
+
+    @Override
+    public Result filter(final LogEvent event) {
+        return sample(event.getLoggerName(), event.getLevel(), event.getMarker());
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Message msg, Throwable t) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, Object msg, Throwable t) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object... params) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg, Object p0, Object p1, Object p2) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3, Object p4) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3, Object p4, Object p5) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6, Object p7) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6, Object p7,
+                         Object p8) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public Result filter(Logger logger, Level level, Marker marker, String msg,
+                         Object p0, Object p1, Object p2, Object p3, Object p4, Object p5, Object p6, Object p7,
+                         Object p8, Object p9) {
+        return sample(logger.getName(), level, marker);
+    }
+
+    @Override
+    public String toString() {
+        return "SamplingFilter[marker=%s, rate=%d, level=%s]".formatted(marker, rate, level);
+    }
+}
@@ -0,0 +1,54 @@
+package com.serezk4.snp.startup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time from JVM start until the bot polls Telegram and until it receives the first update,
+ * exported as {@code bot.startup.polling} and {@code bot.startup.first.update} (seconds, NaN until
+ * reached). Compare them between image builds to see what a startup change buys.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class StartupTimer {
+    @NonFinal
+    volatile double pollingAfter = Double.NaN;
+    @NonFinal
+    volatile double firstUpdateAfter = Double.NaN;
+
+    public StartupTimer(final MeterRegistry meterRegistry) {
+        Gauge.builder("bot.startup.polling", this, timer -> timer.pollingAfter)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("bot.startup.first.update", this, timer -> timer.firstUpdateAfter)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public void polling() {
+        pollingAfter = uptimeSeconds();
+        log.info("polling {} s after JVM start", pollingAfter);
+    }
+
+    public void updateReceived() {
+        if (!Double.isNaN(firstUpdateAfter)) return;
+
+        synchronized (this) {
+            if (!Double.isNaN(firstUpdateAfter)) return;
+            firstUpdateAfter = uptimeSeconds();
+        }
+        log.info("first update {} s after JVM start", firstUpdateAfter);
+    }
+
+    private static double uptimeSeconds() {
+        return ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.serezk4.snp.startup;
+
+import com.serezk4.snp.telegram.bot.Client;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.GetMe;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+
+/**
+ * Opens the connections the first updates need before the bot starts polling: the JDBC and R2DBC
+ * pools and the HTTP connection to the Bot API. Failures are logged and do not block startup, the
+ * pools connect lazily anyway.
+ */
+@Component
+@Log4j2
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Warmup {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    DataSource dataSource;
+    ConnectionFactory connectionFactory;
+    Client client;
+
+    public void run() {
+        final long startedAt = System.nanoTime();
+
+        warm("jdbc pool", () -> {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.isValid((int) TIMEOUT.toSeconds());
+            }
+        });
+        warm("r2dbc pool", () -> {
+            if (connectionFactory instanceof ConnectionPool pool) pool.warmup().block(TIMEOUT);
+        });
+        warm("bot api", () -> client.executeWithException(new GetMe()));
+
+        log.info("warm-up took {} ms", (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private static void warm(final String name, final Step step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            log.warn("{} warm-up failed: {}", name, e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,137 @@
+package com.serezk4.snp.telegram.bot;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Concurrency limit that follows the observed service time, after the gradient algorithm of
+ * Netflix concurrency-limits.
+ * <p>
+ * A long-term average of the service time serves as the baseline. While samples stay close to it
+ * ({@code tolerance}) the limit holds, and grows by {@code sqrt(limit)} if work is queued; when
+ * samples get slower than the baseline the limit shrinks proportionally, down to half per update.
+ * Changes are smoothed, kept within {@code [min, max]} and skipped while less than half of the limit
+ * is in use, because an idle system says nothing about its capacity.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class AdaptiveLimiter {
+    private static final int LONG_WINDOW = 600;
+    private static final double MIN_GRADIENT = 0.5;
+
+    int minLimit;
+    int maxLimit;
+    double tolerance;
+    double smoothing;
+
+    Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+    @NonFinal
+    double limit;
+    @NonFinal
+    int inFlight;
+    @NonFinal
+    double longServiceTime;
+
+    AdaptiveLimiter(
+            final int initialLimit,
+            final int minLimit,
+            final int maxLimit,
+            final double tolerance,
+            final double smoothing
+    ) {
+        if (minLimit < 1 || minLimit > maxLimit) throw new IllegalArgumentException("invalid limit bounds");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * Takes a slot, or waits for one.
+     *
+     * @return completes once the caller holds a slot; it must be given back with {@link #release}.
+     */
+    synchronized CompletableFuture<Void> acquire() {
+        if (inFlight < (int) limit) {
+            inFlight++;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletableFuture<Void> slot = new CompletableFuture<>();
+        waiting.add(slot);
+        return slot;
+    }
+
+    /**
+     * Gives a slot back and adjusts the limit.
+     *
+     * @param serviceNanos how long the slot was held.
+     */
+    void release(final long serviceNanos) {
+        giveBack(serviceNanos);
+    }
+
+    /**
+     * Gives back a slot that was not used, e.g. because the task could not be started; the limit is
+     * left as is.
+     */
+    void abandon() {
+        giveBack(-1);
+    }
+
+    private void giveBack(final long serviceNanos) {
+        final List<CompletableFuture<Void>> granted = new ArrayList<>();
+
+        synchronized (this) {
+            if (serviceNanos >= 0) update(serviceNanos);
+            inFlight--;
+
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                granted.add(waiting.poll());
+            }
+        }
+
+        // completed outside the lock: waiters continue synchronously on this thread
+        granted.forEach(slot -> slot.complete(null));
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private void update(final long serviceNanos) {
+        final double sample = Math.max(serviceNanos, 1);
+
+        if (longServiceTime == 0) longServiceTime = sample;
+        else longServiceTime += (sample - longServiceTime) / LONG_WINDOW;
+
+        // after a long slow period let the baseline recover faster than the window allows
+        if (longServiceTime / sample > 2) longServiceTime *= 0.95;
+
+        if (inFlight < limit / 2) return;
+
+        final double gradient = Math.clamp(tolerance * longServiceTime / sample, MIN_GRADIENT, 1.0);
+        final double headroom = waiting.isEmpty() ? 0 : Math.sqrt(limit);
+        final double target = limit * gradient + headroom;
+
+        limit = Math.clamp(limit * (1 - smoothing) + target * smoothing, minLimit, maxLimit);
+    }
+}
@@ -1,36 +1,122 @@
 package com.serezk4.snp.telegram.bot;
 
+import com.serezk4.snp.startup.StartupTimer;
+import com.serezk4.snp.telegram.cluster.ClusterCoordinator;
+import com.serezk4.snp.telegram.cluster.UpdateForwarder;
+import com.serezk4.snp.telegram.inline.InlineQueryHandler;
+import com.serezk4.snp.telegram.jfr.UpdateDequeuedEvent;
+import com.serezk4.snp.telegram.jfr.UpdateReceivedEvent;
+import com.serezk4.snp.telegram.session.step.StepSession;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public final class Bot implements LongPollingUpdateConsumer {
     Router router;
+    UpdateDeduplicator updateDeduplicator;
+    FloodControl floodControl;
     Handler handler;
+    Client client;
+    ClusterCoordinator clusterCoordinator;
+    UpdateForwarder updateForwarder;
+    StartupTimer startupTimer;
+    InlineQueryHandler inlineQueryHandler;
     @Getter String token;
 
     public Bot(
             final Router router,
+            final UpdateDeduplicator updateDeduplicator,
+            final FloodControl floodControl,
             final Handler handler,
+            final Client client,
+            final ClusterCoordinator clusterCoordinator,
+            final UpdateForwarder updateForwarder,
+            final StartupTimer startupTimer,
+            final InlineQueryHandler inlineQueryHandler,
             final @Value("${telegram.bot.token}") String token
     ) {
         this.router = router;
+        this.updateDeduplicator = updateDeduplicator;
+        this.floodControl = floodControl;
         this.handler = handler;
+        this.client = client;
+        this.clusterCoordinator = clusterCoordinator;
+        this.updateForwarder = updateForwarder;
+        this.startupTimer = startupTimer;
+        this.inlineQueryHandler = inlineQueryHandler;
         this.token = token;
     }
 
     @Override
     public void consume(List<Update> list) {
-        list.stream()
-                .map(UpdateProxy::new)
-                .forEach(update -> router.push(update.getChatId(), () -> handler.process(update)));
+        startupTimer.updateReceived();
+        final List<UpdateProxy> foreign = new ArrayList<>();
+
+        for (Update update : list) {
+            // redelivered after a crash or a lost offset confirmation
+            if (update.getUpdateId() != null && !updateDeduplicator.accept(update.getUpdateId())) continue;
+
+            final UpdateProxy proxy = new UpdateProxy(update);
+            received(proxy);
+            // inline queries are not bound to a chat and must be answered while the user types
+            if (inlineQueryHandler.accepts(proxy)) inlineQueryHandler.handle(proxy);
+            else if (clusterCoordinator.ownsChat(proxy.getChatId())) dispatch(proxy);
+            else foreign.add(proxy);
+        }
+
+        if (!foreign.isEmpty()) updateForwarder.forward(foreign);
+    }
+
+    /**
+     * Routes an update of a chat owned by this instance to its handler, unless the chat exceeds its
+     * inbound rate. Button presses are acknowledged right away so the client stops its spinner whatever
+     * the chat is busy with, and cancels preempt the chat's pending work.
+     *
+     * @param update update to process.
+     * @return completes once the update was processed, or at once if it was dropped.
+     */
+    public CompletableFuture<Void> dispatch(final UpdateProxy update) {
+        if (update.getCallbackQueryId() != null) {
+            client.executeAsync(AnswerCallbackQuery.builder().callbackQueryId(update.getCallbackQueryId()).build());
+        }
+        if (!floodControl.tryAcquire(update)) return CompletableFuture.completedFuture(null);
+
+        final Router.Priority priority = StepSession.isExitCommand(update)
+                ? Router.Priority.CONTROL
+                : Router.Priority.NORMAL;
+
+        final UpdateDequeuedEvent dequeued = new UpdateDequeuedEvent();
+        dequeued.begin();
+
+        return router.pushAsync(update.getChatId(), priority, executor -> {
+            dequeued.end();
+            if (dequeued.shouldCommit()) {
+                dequeued.chatId = update.getChatId();
+                dequeued.updateId = update.getUpdateId();
+                dequeued.commit();
+            }
+            return handler.process(update, executor);
+        });
+    }
+
+    private static void received(final UpdateProxy update) {
+        final UpdateReceivedEvent event = new UpdateReceivedEvent();
+        if (!event.shouldCommit()) return;
+
+        event.chatId = update.getChatId();
+        event.updateId = update.getUpdateId();
+        event.queryType = update.getQueryType().name();
+        event.commit();
     }
 }
@@ -1,21 +1,31 @@
 package com.serezk4.snp.telegram.bot;
 
+import com.serezk4.snp.logging.LogMarkers;
+import com.serezk4.snp.telegram.jfr.PhotoDownloadedEvent;
+import com.serezk4.snp.telegram.jfr.TelegramApiCallEvent;
+import com.serezk4.snp.telegram.jfr.UpdateScope;
 import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
 import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.TelegramUrl;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URL;
@@ -33,56 +43,155 @@ import java.util.concurrent.CompletableFuture;
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public final class Client extends OkHttpTelegramClient {
     String botToken;
+    @Getter TelegramUrl telegramUrl;
 
-    public Client(final @Value("${telegram.bot.token}") String botToken) {
-        super(botToken);
+    @Autowired
+    public Client(
+            final @Value("${telegram.bot.token}") String botToken,
+            final @Value("${telegram.bot.api-url:https://api.telegram.org}") String apiUrl
+    ) {
+        this(botToken, parseUrl(apiUrl));
+    }
+
+    /**
+     * Creates a client for a Bot API server other than {@code api.telegram.org}, e.g. a local stub.
+     *
+     * @param botToken    bot token.
+     * @param telegramUrl Bot API location.
+     */
+    public Client(final String botToken, final TelegramUrl telegramUrl) {
+        super(botToken, telegramUrl);
         this.botToken = botToken;
+        this.telegramUrl = telegramUrl;
+    }
+
+    private static TelegramUrl parseUrl(final String apiUrl) {
+        final URI uri = URI.create(apiUrl);
+        final boolean https = "https".equalsIgnoreCase(uri.getScheme());
+
+        return TelegramUrl.builder()
+                .schema(uri.getScheme())
+                .host(uri.getHost())
+                .port(uri.getPort() != -1 ? uri.getPort() : https ? 443 : 80)
+                .testServer(false)
+                .build();
     }
 
     @Override
     public <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> executeAsync(Method method) {
+        final TelegramApiCallEvent event = begin();
         try {
-            log.info("Executed method (async): {}", method.getClass().getSimpleName());
-            return super.executeAsync(method);
+            log.debug(LogMarkers.PER_UPDATE, "Executed method (async): {}", method.getClass().getSimpleName());
+            return complete(event, method.getMethod(), super.executeAsync(method));
         } catch (TelegramApiException e) {
+            commit(event, method.getMethod(), true, false);
             log.error("Error while executing method: {}. Error is {}", method.getMethod(), e.getMessage());
             return CompletableFuture.completedFuture(null);
         }
     }
 
+    @Override
+    public CompletableFuture<Message> executeAsync(SendDocument sendDocument) {
+        return complete(begin(), sendDocument.getMethod(), super.executeAsync(sendDocument));
+    }
+
     public <T extends Serializable, Method extends BotApiMethod<T>> T executeWithException(
             final Method method
     ) throws TelegramApiException {
-        log.info("Executed method: {}", method.getClass().getSimpleName());
-        return super.execute(method);
+        log.debug(LogMarkers.PER_UPDATE, "Executed method: {}", method.getClass().getSimpleName());
+        final TelegramApiCallEvent event = begin();
+        boolean succeeded = false;
+        try {
+            final T result = super.execute(method);
+            succeeded = true;
+            return result;
+        } finally {
+            commit(event, method.getMethod(), false, succeeded);
+        }
     }
 
     @Override
     public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) {
         try {
-            log.info("Executed method (not async): {}", method.getClass().getSimpleName());
-            return super.execute(method);
+            return executeWithException(method);
         } catch (TelegramApiException e) {
             log.error("Error while executing method: {}. Error is {}", method.getMethod(), e.getMessage());
             return null;
         }
     }
 
+    private static TelegramApiCallEvent begin() {
+        final TelegramApiCallEvent event = new TelegramApiCallEvent();
+        event.begin();
+        if (event.isEnabled()) {
+            // captured now: async completions run on OkHttp threads outside the update's scope
+            event.chatId = UpdateScope.chatId();
+            event.updateId = UpdateScope.updateId();
+        }
+        return event;
+    }
+
+    private static <T> CompletableFuture<T> complete(
+            final TelegramApiCallEvent event,
+            final String method,
+            final CompletableFuture<T> future
+    ) {
+        if (!event.isEnabled()) return future;
+        return future.whenComplete((_, throwable) -> commit(event, method, true, throwable == null));
+    }
+
+    private static void commit(
+            final TelegramApiCallEvent event,
+            final String method,
+            final boolean async,
+            final boolean succeeded
+    ) {
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        event.method = method;
+        event.async = async;
+        event.succeeded = succeeded;
+        event.commit();
+    }
+
     public java.io.File downloadFile(PhotoSize photo, String localFilePath) {
+        return downloadFile(photo.getFileId(), localFilePath);
+    }
+
+    public java.io.File downloadFile(String fileId, String localFilePath) {
+        final PhotoDownloadedEvent event = new PhotoDownloadedEvent();
+        event.begin();
+
+        final java.io.File file = download(fileId, localFilePath);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.chatId = UpdateScope.chatId();
+            event.updateId = UpdateScope.updateId();
+            event.fileId = fileId;
+            event.size = file == null ? 0 : file.length();
+            event.commit();
+        }
+        return file;
+    }
+
+    private java.io.File download(String fileId, String localFilePath) {
         try {
             if (localFilePath == null || localFilePath.trim().isEmpty()) {
                 log.error("Error: localFilePath is null or empty.");
                 return null;
             }
 
-            File file = execute(new GetFile(photo.getFileId()));
+            File file = execute(new GetFile(fileId));
             if (file == null || file.getFilePath() == null || file.getFilePath().isEmpty()) {
-                log.error("Error: Telegram did not return a valid file path for fileId: {}", photo.getFileId());
+                log.error("Error: Telegram did not return a valid file path for fileId: {}", fileId);
                 return null;
             }
 
-            String fileUrl = "https://api.telegram.org/file/bot" + this.botToken + "/" + file.getFilePath();
-            log.info("Attempting to download from: {}", fileUrl);
+            String fileUrl = "%s://%s:%d/file/bot%s/%s".formatted(telegramUrl.getSchema(), telegramUrl.getHost(),
+                    telegramUrl.getPort(), this.botToken, file.getFilePath());
+            log.debug(LogMarkers.PER_UPDATE, "Attempting to download from: {}", fileUrl);
 
             HttpClient httpClient = HttpClient.newBuilder()
                     .followRedirects(HttpClient.Redirect.ALWAYS)
@@ -124,15 +233,30 @@ public final class Client extends OkHttpTelegramClient {
                 return null;
             }
 
-            log.info("File downloaded successfully: {}", localFile.getAbsolutePath());
+            log.debug(LogMarkers.PER_UPDATE, "File downloaded successfully: {}", localFile.getAbsolutePath());
             return localFile;
 
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return abandon(localFilePath);
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted() || e instanceof InterruptedIOException) {
+                return abandon(localFilePath);
+            }
             log.error("Error while downloading file: {}", e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * Drops a download interrupted by a cancelled prefetch; the partial file is of no use.
+     */
+    private java.io.File abandon(String localFilePath) {
+        log.debug("download to {} interrupted", localFilePath);
+        FileUtils.deleteQuietly(new java.io.File(localFilePath));
+        return null;
+    }
+
     public void sendMessage(long chatId, String text) {
         executeAsync(SendMessage.builder()
                 .chatId(String.valueOf(chatId))
@@ -0,0 +1,225 @@
+package com.serezk4.snp.telegram.bot;
+
+import com.serezk4.snp.database.cache.UserCache;
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.session.step.StepSession;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Inbound rate limit per chat, applied before an update is queued in the {@link Router}, so a
+ * spamming chat neither delays other chats nor hits the database. Dispatched updates without a
+ * chat, i.e. shipping and pre-checkout queries and poll answers, are limited per user. Inline
+ * queries and chosen inline results are answered by the {@code InlineQueryHandler} before dispatch
+ * and are not limited here: dropping one would leave stale results while the user types. Membership
+ * changes and cancels are never dropped: the former are sent by Telegram, not the user, and the
+ * latter are how a user stops what they flooded.
+ * <p>
+ * Each chat has a token bucket, kept as a single theoretical arrival time (GCRA). Buckets live in
+ * striped open-addressing tables keyed by the primitive chat id; a stripe drops the buckets that
+ * have refilled completely whenever it needs to grow. Rate and burst depend on the user's role,
+ * read from the {@link UserCache}; chats not in the cache get the {@code USER} limits.
+ * Excess updates are dropped.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class FloodControl {
+    private static final int ALLOWED = 0;
+    private static final int THROTTLED = 1;
+    private static final int THROTTLING_STARTED = 2;
+
+    UserCache userCache;
+    boolean enabled;
+    Limit userLimit;
+    Limit adminLimit;
+
+    Stripe[] stripes;
+    int stripeMask;
+
+    Counter throttled;
+    Counter throttledChats;
+
+    public FloodControl(
+            final UserCache userCache,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.flood.enabled:true}") boolean enabled,
+            final @Value("${telegram.flood.stripes:64}") int stripes,
+            final @Value("${telegram.flood.user.rate:2}") double userRate,
+            final @Value("${telegram.flood.user.burst:10}") int userBurst,
+            final @Value("${telegram.flood.admin.rate:50}") double adminRate,
+            final @Value("${telegram.flood.admin.burst:100}") int adminBurst
+    ) {
+        this.userCache = userCache;
+        this.enabled = enabled;
+        this.userLimit = Limit.of(userRate, userBurst);
+        this.adminLimit = Limit.of(adminRate, adminBurst);
+
+        final int stripeCount = Integer.highestOneBit(Math.max(stripes, 1) * 2 - 1);
+        this.stripes = new Stripe[stripeCount];
+        Arrays.setAll(this.stripes, _ -> new Stripe());
+        this.stripeMask = stripeCount - 1;
+
+        this.throttled = meterRegistry.counter("bot.flood.throttled");
+        this.throttledChats = meterRegistry.counter("bot.flood.throttled.chats");
+        Gauge.builder("bot.flood.chats", this, FloodControl::size).register(meterRegistry);
+    }
+
+    /**
+     * Takes a token from the bucket of the update's chat, or of its sender if it has no chat.
+     *
+     * @param update incoming update.
+     * @return {@code true} if the update may be processed, {@code false} if it should be dropped.
+     */
+    public boolean tryAcquire(final UpdateProxy update) {
+        if (!enabled || isExempt(update)) return true;
+
+        final long key = update.getChatId() != -1 ? update.getChatId() : update.getUserId();
+        // nobody to attribute the update to, nobody to hold back
+        if (key == -1) return true;
+
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    static boolean isExempt(final UpdateProxy update) {
+        return update.getQueryType() == UpdateProxy.QueryType.CHAT_MEMBER_UPDATED_MY
+                || update.getQueryType() == UpdateProxy.QueryType.CHAT_MEMBER_UPDATED
+                || StepSession.isExitCommand(update);
+    }
+
+    /**
+     * Takes a token from the chat's bucket.
+     *
+     * @param chatId chat id; in private chats the same as the user id.
+     * @param now    current {@link System#nanoTime()}.
+     */
+    boolean tryAcquire(final long chatId, final long now) {
+        final User user = userCache.peek(chatId);
+        final Limit limit = user != null && user.getRole() == User.Role.ADMIN ? adminLimit : userLimit;
+
+        final long hash = hash(chatId);
+        final Stripe stripe = stripes[(int) (hash >>> 40) & stripeMask];
+        final int outcome = stripe.tryAcquire(chatId, hash, limit, now);
+        if (outcome == ALLOWED) return true;
+
+        throttled.increment();
+        if (outcome == THROTTLING_STARTED) {
+            throttledChats.increment();
+            log.info("throttling chat {}", chatId);
+        }
+        return false;
+    }
+
+    private static long hash(final long chatId) {
+        return chatId * 0x9E3779B97F4A7C15L;
+    }
+
+    double size() {
+        return Arrays.stream(stripes).mapToInt(Stripe::size).sum();
+    }
+
+    /**
+     * GCRA parameters: one token per {@code interval}, {@code tolerance} is how far ahead of now
+     * the arrival time may run, i.e. the burst.
+     */
+    private record Limit(long interval, long tolerance) {
+        private static Limit of(final double ratePerSecond, final int burst) {
+            if (ratePerSecond <= 0 || burst < 1) throw new IllegalArgumentException("invalid flood limit");
+
+            final long interval = (long) (1_000_000_000L / ratePerSecond);
+            return new Limit(interval, interval * (burst - 1));
+        }
+    }
+
+    /**
+     * Open-addressing table of buckets with linear probing, guarded by its own monitor.
+     */
+    private static final class Stripe {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] chatIds = new long[INITIAL_CAPACITY];
+        private long[] arrivals = new long[INITIAL_CAPACITY];
+        private boolean[] used = new boolean[INITIAL_CAPACITY];
+        private boolean[] throttled = new boolean[INITIAL_CAPACITY];
+        private int size;
+
+        private synchronized int tryAcquire(final long chatId, final long hash, final Limit limit, final long now) {
+            int slot = slotOf(chatId, hash);
+            if (!used[slot]) {
+                if ((size + 1) * 2 > used.length) {
+                    rebuild(now);
+                    slot = slotOf(chatId, hash);
+                }
+                used[slot] = true;
+                chatIds[slot] = chatId;
+                arrivals[slot] = now;
+                throttled[slot] = false;
+                size++;
+            }
+
+            final long arrival = Math.max(arrivals[slot], now);
+            if (arrival - now > limit.tolerance()) {
+                final boolean started = !throttled[slot];
+                throttled[slot] = true;
+                return started ? THROTTLING_STARTED : THROTTLED;
+            }
+
+            arrivals[slot] = arrival + limit.interval();
+            throttled[slot] = false;
+            return ALLOWED;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private int slotOf(final long chatId, final long hash) {
+            final int mask = used.length - 1;
+            int slot = (int) hash & mask;
+            while (used[slot] && chatIds[slot] != chatId) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        /**
+         * Drops buckets whose arrival time has passed (they are full again, same as absent) and
+         * resizes the table for the remaining ones.
+         */
+        private void rebuild(final long now) {
+            final long[] oldChatIds = chatIds;
+            final long[] oldArrivals = arrivals;
+            final boolean[] oldUsed = used;
+            final boolean[] oldThrottled = throttled;
+
+            int live = 0;
+            for (int i = 0; i < oldUsed.length; i++) if (oldUsed[i] && oldArrivals[i] - now > 0) live++;
+
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < (live + 1) * 4) capacity <<= 1;
+
+            chatIds = new long[capacity];
+            arrivals = new long[capacity];
+            used = new boolean[capacity];
+            throttled = new boolean[capacity];
+            size = 0;
+
+            for (int i = 0; i < oldUsed.length; i++) {
+                if (!oldUsed[i] || oldArrivals[i] - now <= 0) continue;
+
+                final int slot = slotOf(oldChatIds[i], hash(oldChatIds[i]));
+                used[slot] = true;
+                chatIds[slot] = oldChatIds[i];
+                arrivals[slot] = oldArrivals[i];
+                throttled[slot] = oldThrottled[i];
+                size++;
+            }
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package com.serezk4.snp.telegram.bot;
 
+import com.serezk4.snp.database.event.UpdateEvent;
+import com.serezk4.snp.database.event.UpdateEventWriter;
 import com.serezk4.snp.database.model.User;
-import com.serezk4.snp.database.service.UserService;
+import com.serezk4.snp.database.service.BroadcastService;
+import com.serezk4.snp.database.service.ReactiveUserService;
+import com.serezk4.snp.logging.LogMarkers;
 import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.jfr.UpdateScope;
+import com.serezk4.snp.telegram.jfr.UserLoadedEvent;
 import com.serezk4.snp.telegram.session.Session;
 import com.serezk4.snp.telegram.session.empty.EmptySession;
 import com.serezk4.snp.telegram.session.manager.StepManager;
@@ -13,63 +19,105 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
 
-import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Log4j2
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public final class Handler {
+    private static final String START_PAYLOAD_PREFIX = "/start ";
+
     @Getter
     List<Command<? extends Session>> commands;
 
-    UserService userService;
+    ReactiveUserService reactiveUserService;
     Client client;
+    UpdateEventWriter updateEventWriter;
+    BroadcastService broadcastService;
 
     StepManager stepManager = StepManager.getInstance();
 
-    public void process(final UpdateProxy update) {
+    /**
+     * Processes an update. The user lookup is non-blocking; the rest of the processing runs on
+     * {@code executor} once the user is known, so no thread waits for the database.
+     *
+     * @param update   incoming update.
+     * @param executor executor that owns the update's chat.
+     * @return completion of the processing.
+     */
+    public CompletableFuture<Void> process(final UpdateProxy update, final Executor executor) {
+        final long startedAt = System.nanoTime();
         final long chatId = update.getChatId();
         final String username = update.getUsername();
-        final String text = Optional.ofNullable(update.getText())
-                .map(t -> new String(t.getBytes(), StandardCharsets.UTF_8))
-                .orElse("");
+        final String text = update.getText() == null ? "" : update.getText();
+
+        log.debug(LogMarkers.PER_UPDATE, "Chat ID: {}, Username: {}, Text: {}", chatId, username, text);
 
-        log.info("Chat ID: {}, Username: {}, Text: {}", chatId, username, text);
+        if (update.getQueryType() == UpdateProxy.QueryType.CHAT_MEMBER_UPDATED_MY) {
+            return CompletableFuture.runAsync(() -> recordMembership(update), executor);
+        }
 
-        log.info(chatId);
-        log.info(userService.findByChatId(chatId));
+        final UserLoadedEvent userLoaded = new UserLoadedEvent();
+        userLoaded.begin();
+
+        return reactiveUserService.findOrCreate(chatId, username, getUtm(text))
+                .toFuture()
+                .whenComplete((_, _) -> commit(userLoaded, update))
+                .thenApplyAsync(user -> {
+                    UpdateScope.enter(chatId, update.getUpdateId());
+                    try {
+                        return process(update, user, text);
+                    } finally {
+                        UpdateScope.exit();
+                    }
+                }, executor)
+                .whenComplete((result, throwable) -> record(update, throwable == null
+                        ? result
+                        : new Result(UpdateEvent.Outcome.ERROR, null, null), startedAt))
+                .thenAccept(_ -> {
+                });
+    }
 
-        final User user = userService.findByChatId(chatId)
-                .orElseGet(() -> userService.save(User.builder()
-                        .chatId(chatId)
-                        .username(username)
-                        .utm(getUtm(text))
-                        .build()));
+    private Result process(final UpdateProxy update, final User user, final String text) {
+        final long chatId = user.getChatId();
 
         if (!user.isAccountNonLocked()) {
             client.sendMessage(chatId, "Ваш аккаунт заблокирован. Обратитесь к администратору.");
-            return;
+            return new Result(UpdateEvent.Outcome.LOCKED, null, null);
         }
 
         if (stepManager.containsSession(chatId)) {
-            stepManager.getSession(chatId).next(client, update, user);
-            return;
+            final StepSession stepSession = stepManager.getSession(chatId);
+            stepSession.next(client, update, user);
+            return Result.of(stepSession);
         }
 
-        final Optional<Command<? extends Session>> optionalCommand = commands.stream()
-                .filter(c -> c.getUsage().contains(text))
-                .findFirst();
+        if (StepSession.isExitCommand(update)) {
+            // the session is gone: its final step either stopped for this very cancel before saving
+            // anything, or had already completed
+            if (Router.preemption().followsYield()) {
+                client.sendMessage(chatId, "Отменено.");
+                return new Result(UpdateEvent.Outcome.CANCELLED, null, null);
+            }
+            client.sendMessage(chatId, "Нечего отменять.");
+            return new Result(UpdateEvent.Outcome.OK, null, null);
+        }
+
+        final String commandName = getCommandName(text);
+        final Optional<Command<? extends Session>> optionalCommand = findCommand(text);
 
         if (optionalCommand.isEmpty()) {
             client.sendMessage(chatId, getHelp(user.getRole()));
-            return;
+            return new Result(UpdateEvent.Outcome.UNKNOWN_COMMAND, null, null);
         }
 
         if (optionalCommand.get().getRequiredRole().getLevel() > user.getRole().getLevel()) {
             client.sendMessage(chatId, "У вас недостаточно прав для выполнения этой команды.");
-            return;
+            return new Result(UpdateEvent.Outcome.FORBIDDEN, commandName, null);
         }
 
         Session session = optionalCommand.get().createSession(chatId);
@@ -81,11 +129,64 @@ public final class Handler {
         } catch (Exception e) {
             log.error("Error while executing command: {}", e.getMessage());
             client.sendMessage(chatId, "Произошла ошибка при выполнении команды.");
+            return new Result(UpdateEvent.Outcome.ERROR, commandName, null);
         }
+
+        return session instanceof StepSession stepSession
+                ? Result.of(stepSession)
+                : new Result(UpdateEvent.Outcome.OK, commandName, null);
+    }
+
+    /**
+     * Records whether the user blocked or unblocked the bot, so broadcasts skip blocked chats.
+     */
+    private void recordMembership(final UpdateProxy update) {
+        final String status = update.getSelf().getMyChatMember().getNewChatMember().getStatus();
+        broadcastService.setBlocked(update.getChatId(), "kicked".equals(status));
+    }
+
+    private static void commit(final UserLoadedEvent event, final UpdateProxy update) {
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        event.chatId = update.getChatId();
+        event.updateId = update.getUpdateId();
+        event.commit();
+    }
+
+    private void record(final UpdateProxy update, final Result result, final long startedAt) {
+        updateEventWriter.record(new UpdateEvent(
+                Instant.now(),
+                update.getChatId(),
+                update.getUpdateId(),
+                update.getQueryType().name(),
+                result.command(),
+                result.step(),
+                (System.nanoTime() - startedAt) / 1_000,
+                result.outcome()
+        ));
+    }
+
+    /**
+     * Finds the command addressed by the first token of the text.
+     *
+     * @param text message text, e.g. {@code /start utm_source}.
+     * @return matching command, if any.
+     */
+    public Optional<Command<? extends Session>> findCommand(final String text) {
+        final String commandName = getCommandName(text);
+        return commands.stream()
+                .filter(c -> c.getUsage().contains(commandName))
+                .findFirst();
+    }
+
+    private String getCommandName(final String text) {
+        final int space = text.indexOf(' ');
+        return space < 0 ? text : text.substring(0, space);
     }
 
     private String getUtm(final String text) {
-        return text.contains(" ") ? text.substring(text.indexOf(' ') + 1) : "";
+        return text.startsWith(START_PAYLOAD_PREFIX) ? text.substring(START_PAYLOAD_PREFIX.length()).trim() : "";
     }
 
     private String getHelp(User.Role role) {
@@ -95,4 +196,16 @@ public final class Handler {
                 .reduce((a, b) -> String.join("\n", a, b))
                 .orElse("Команды не найдены."));
     }
+
+    private record Result(UpdateEvent.Outcome outcome, String command, Integer step) {
+        private static Result of(final StepSession session) {
+            final String command = session.getCommand().getUsage().getFirst();
+            return switch (session.getState()) {
+                case STARTED, ADVANCED -> new Result(UpdateEvent.Outcome.STEP, command, session.getStepIndex());
+                case REJECTED -> new Result(UpdateEvent.Outcome.INVALID, command, session.getStepIndex());
+                case CANCELLED -> new Result(UpdateEvent.Outcome.CANCELLED, command, session.getStepIndex());
+                case COMPLETED -> new Result(UpdateEvent.Outcome.COMPLETED, command, session.getStepIndex() + 1);
+            };
+        }
+    }
 }
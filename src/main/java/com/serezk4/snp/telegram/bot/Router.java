@@ -1,51 +1,278 @@
 package com.serezk4.snp.telegram.bot;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.IntStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Runs chat tasks in order per chat, on virtual threads.
+ * <p>
+ * How many chats are processed at once is decided by an {@link AdaptiveLimiter}: the limit follows
+ * the measured service time of tasks, so it backs off when Telegram or the database slows down and
+ * grows again while tasks wait for a slot. The limit starts at {@code telegram.bot.threads}.
+ * <p>
+ * Tasks have a {@link Priority}. A {@link Priority#CONTROL} task preempts its chat: tasks queued
+ * before it are skipped, and the running one sees its {@link Preemption} requested and stops at the
+ * next point where stopping leaves nothing half done, e.g. before a download, a render or a save.
+ * Threads are never interrupted: an interrupt inside JDBC or HTTP I/O closes pooled connections.
+ */
 @Component
 @Log4j2
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 public final class Router {
-    List<ExecutorService> services;
-    int size;
+    private static final ThreadLocal<Preemption> CURRENT = new ThreadLocal<>();
 
-    public Router(@Value("${telegram.bot.threads}") int size) {
-        this.services = new ArrayList<>(size);
-        this.size = size;
+    ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("router-", 0).factory());
+    AdaptiveLimiter limiter;
 
-        IntStream.range(0, size)
-                .mapToObj(_ -> Executors.newSingleThreadExecutor())
-                .forEach(this.services::add);
+    Timer queueWait;
+    Timer serviceTime;
+    Counter skipped;
+    Counter yielded;
 
-        log.info("created executor service router with {} services", this.size);
+    /**
+     * Chats with pending tasks; asynchronous tasks of a chat are chained behind its tail.
+     */
+    Map<Long, Chat> chats = new ConcurrentHashMap<>();
+
+    public Router(
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.bot.threads}") int initialLimit,
+            final @Value("${telegram.router.min-limit:2}") int minLimit,
+            final @Value("${telegram.router.max-limit:256}") int maxLimit,
+            final @Value("${telegram.router.tolerance:1.5}") double tolerance,
+            final @Value("${telegram.router.smoothing:0.2}") double smoothing
+    ) {
+        this.limiter = new AdaptiveLimiter(initialLimit, minLimit, maxLimit, tolerance, smoothing);
+
+        this.queueWait = Timer.builder("bot.router.queue.wait").register(meterRegistry);
+        this.serviceTime = Timer.builder("bot.router.service.time").register(meterRegistry);
+        this.skipped = meterRegistry.counter("bot.router.preempted.skipped");
+        this.yielded = meterRegistry.counter("bot.router.preempted.yielded");
+        Gauge.builder("bot.router.limit", limiter, AdaptiveLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("bot.router.inflight", limiter, AdaptiveLimiter::getInFlight).register(meterRegistry);
+        Gauge.builder("bot.router.waiting", limiter, AdaptiveLimiter::getWaiting).register(meterRegistry);
+
+        log.info("created router, concurrency limit {} within [{}, {}]", limiter.getLimit(), minLimit, maxLimit);
     }
 
     public boolean isShutdown() {
-        return services.stream().allMatch(ExecutorService::isShutdown);
+        return executor.isShutdown();
+    }
+
+    public CompletableFuture<Void> push(long id, Runnable runnable) {
+        return pushAsync(id, executor -> CompletableFuture.runAsync(runnable, executor));
+    }
+
+    public CompletableFuture<Void> pushAsync(long id, Task task) {
+        return pushAsync(id, Priority.NORMAL, task);
+    }
+
+    /**
+     * Routes a task that completes asynchronously. The task starts only after the previous task of
+     * the same chat has completed and a concurrency slot is free; the slot is held until the returned
+     * stage completes, and its duration is fed back into the limit.
+     *
+     * @param id       chat id.
+     * @param priority {@link Priority#CONTROL} to preempt the chat's queued and running tasks.
+     * @param task     task to run; receives the executor it should continue on.
+     * @return completes normally once the task has completed, failed or was skipped; it may also wait
+     *         for tasks of the chat routed concurrently, never complete before the task.
+     */
+    public CompletableFuture<Void> pushAsync(long id, Priority priority, Task task) {
+        if (isShutdown()) throw new IllegalStateException("cannot route task: router is shut down");
+
+        final Chat chat = chats.compute(id, (_, current) -> {
+            final Chat target = current == null ? new Chat() : current;
+            if (priority == Priority.CONTROL) target.epoch++;
+
+            final long epoch = target.epoch;
+            target.tail = target.tail
+                    .thenCompose(_ -> {
+                        if (target.epoch != epoch) {
+                            skipped.increment();
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        return runWithSlot(target, epoch, priority, task);
+                    })
+                    .handle((_, throwable) -> {
+                        if (throwable != null) log.error("task#{} failed", id, throwable);
+                        return null;
+                    });
+            return target;
+        });
+
+        final CompletableFuture<Void> tail = chat.tail;
+        tail.whenComplete((_, _) -> chats.computeIfPresent(id, (_, current) -> current.tail == tail ? null : current));
+        return tail;
+    }
+
+    /**
+     * Runs the task once a slot is free. If the executor rejects the task, e.g. after a shutdown, the
+     * slot is given back here, since {@link #run} never started to release it.
+     */
+    private CompletableFuture<Void> runWithSlot(
+            final Chat chat,
+            final long epoch,
+            final Priority priority,
+            final Task task
+    ) {
+        final AtomicBoolean started = new AtomicBoolean();
+        return acquire()
+                .thenComposeAsync(_ -> {
+                    started.set(true);
+                    return run(chat, epoch, priority, task);
+                }, executor)
+                .whenComplete((_, _) -> {
+                    if (!started.get()) limiter.abandon();
+                });
+    }
+
+    private CompletableFuture<Void> acquire() {
+        final long waitingSince = System.nanoTime();
+        return limiter.acquire()
+                .thenRun(() -> queueWait.record(System.nanoTime() - waitingSince, TimeUnit.NANOSECONDS));
+    }
+
+    private CompletionStage<Void> run(final Chat chat, final long epoch, final Priority priority, final Task task) {
+        final long startedAt = System.nanoTime();
+
+        // tasks of a chat run one after another, so the one it preempted has finished by now
+        final boolean followsYield = priority == Priority.CONTROL && chat.yielded.getAndSet(false);
+        if (followsYield) yielded.increment();
+        final Preemption preemption = new Preemption(chat, epoch, followsYield);
+
+        CompletionStage<Void> stage;
+        CURRENT.set(preemption);
+        try {
+            stage = task.run(preemption.executor(executor));
+        } catch (RuntimeException e) {
+            stage = CompletableFuture.failedFuture(e);
+        } finally {
+            CURRENT.remove();
+        }
+
+        return stage.whenComplete((_, _) -> {
+            final long elapsed = System.nanoTime() - startedAt;
+            serviceTime.record(elapsed, TimeUnit.NANOSECONDS);
+            limiter.release(elapsed);
+        });
     }
 
-    public void push(long id, Runnable runnable) {
-        if (isShutdown()) throw new IllegalStateException("cannot route task: all executors are shut down");
+    @FunctionalInterface
+    public interface Task {
+        CompletionStage<Void> run(Executor executor);
+    }
+
+    public enum Priority {
+        /**
+         * Regular update, processed in arrival order.
+         */
+        NORMAL,
+        /**
+         * Update that overrides whatever the chat is doing, e.g. a cancel.
+         */
+        CONTROL
+    }
+
+    /**
+     * Preemption of the running task, or one that is never requested outside router tasks.
+     */
+    public static Preemption preemption() {
+        final Preemption current = CURRENT.get();
+        return current == null ? Preemption.NONE : current;
+    }
+
+    /**
+     * Pending work of a chat. {@code tail} is only replaced inside {@code chats.compute}; tasks
+     * compare their epoch with the current one to find out whether they were preempted.
+     */
+    private static final class Chat {
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private volatile long epoch;
+        /**
+         * Whether a preempted task stopped before changing anything; taken by the next control task.
+         */
+        private final AtomicBoolean yielded = new AtomicBoolean();
+    }
+
+    /**
+     * Cooperative cancellation of a chat task, available to it through {@link #preemption()} on the
+     * threads it runs on.
+     */
+    public static final class Preemption {
+        public static final Preemption NONE = new Preemption(null, 0, false);
+
+        private final Chat chat;
+        private final long epoch;
+        private final boolean followsYield;
+
+        private Preemption(final Chat chat, final long epoch, final boolean followsYield) {
+            this.chat = chat;
+            this.epoch = epoch;
+            this.followsYield = followsYield;
+        }
+
+        /**
+         * @return whether a control task was routed to the chat after this task.
+         */
+        public boolean isRequested() {
+            return chat != null && chat.epoch != epoch;
+        }
+
+        /**
+         * Stops the task if it is preempted: to be called where stopping leaves nothing half done.
+         *
+         * @return {@code true} if the task should return now; the control task learns it has nothing
+         *         to undo.
+         */
+        public boolean yieldIfRequested() {
+            if (!isRequested()) return false;
+            chat.yielded.set(true);
+            return true;
+        }
+
+        /**
+         * @return for a control task, whether the task it preempted stopped before changing anything.
+         */
+        public boolean followsYield() {
+            return followsYield;
+        }
 
-        final int executorId = (int) ((id) % size);
-        log.info("routing task#{}... to executor {}", id, executorId);
-        services.get(executorId).execute(runnable);
-        log.info("sent task#{} to executor#{}", id, executorId);
+        /**
+         * Wraps the router's executor so every step of the task sees this preemption.
+         */
+        private Executor executor(final Executor delegate) {
+            return command -> delegate.execute(() -> {
+                CURRENT.set(this);
+                try {
+                    command.run();
+                } finally {
+                    CURRENT.remove();
+                }
+            });
+        }
     }
 
     public void shutdown() {
         log.info("shutting down...");
-        services.forEach(ExecutorService::shutdown);
+        executor.shutdown();
         log.info("turned off successfully");
     }
 }
@@ -0,0 +1,171 @@
+package com.serezk4.snp.telegram.bot;
+
+import com.serezk4.snp.database.repository.UpdateOffsetRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drops updates that were already received, e.g. redelivered after a crash before Telegram got the
+ * confirming offset.
+ * <p>
+ * Update ids grow by one per update, so the ids seen lately are kept as a ring of bits covering the
+ * last {@code telegram.dedupe.window} ids below the highest one; checking an id is a bit test. The
+ * highest id is saved in {@code update_offsets} every {@code telegram.dedupe.flush-interval} ms, and
+ * the next poller treats all ids up to it as seen. Updates received but not processed before a crash
+ * are therefore not processed at all, which step sessions, kept in memory, would not survive anyway.
+ * <p>
+ * Telegram keeps undelivered updates for a day and may restart the sequence at a random id after a
+ * week without updates, so a mark older than a day is ignored, and an id below the window starts it
+ * anew instead of being dropped.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class UpdateDeduplicator {
+    private static final Duration MARK_MAX_AGE = Duration.ofDays(1);
+
+    UpdateOffsetRepository updateOffsetRepository;
+    String botId;
+    long flushInterval;
+    int window;
+    long[] seen;
+    Counter duplicates;
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "update-offset-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The mark is read on the first update, which this instance only gets once it is the poller.
+     */
+    @NonFinal
+    boolean loaded;
+    @NonFinal
+    long highest = -1;
+    @NonFinal
+    long flushed = -1;
+
+    public UpdateDeduplicator(
+            final UpdateOffsetRepository updateOffsetRepository,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.bot.token}") String token,
+            final @Value("${telegram.dedupe.window:65536}") int window,
+            final @Value("${telegram.dedupe.flush-interval:1000}") long flushInterval
+    ) {
+        if (window < Long.SIZE || Integer.bitCount(window) != 1) {
+            throw new IllegalArgumentException("telegram.dedupe.window must be a power of two, at least 64");
+        }
+
+        this.updateOffsetRepository = updateOffsetRepository;
+        // the part of the token before the colon is the bot id; the secret is never stored
+        this.botId = token.split(":", 2)[0];
+        this.window = window;
+        this.flushInterval = flushInterval;
+        this.seen = new long[window / Long.SIZE];
+        this.duplicates = meterRegistry.counter("bot.updates.duplicate");
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Records the update id.
+     *
+     * @param updateId id of a received update; negative ids, of updates built locally, always pass.
+     * @return {@code true} if the update is new and should be processed.
+     */
+    public synchronized boolean accept(final long updateId) {
+        if (updateId < 0) return true;
+        if (!loaded) load();
+
+        if (highest < 0 || updateId <= highest - window) {
+            if (highest >= 0) log.info("update ids restarted at {}, previous highest {}", updateId, highest);
+            Arrays.fill(seen, 0);
+            return advance(updateId);
+        }
+
+        if (updateId > highest) {
+            if (updateId - highest >= window) Arrays.fill(seen, 0);
+            else for (long id = highest + 1; id < updateId; id++) clear(id);
+            return advance(updateId);
+        }
+
+        final int index = (int) (updateId & (window - 1));
+        final long bit = 1L << index;
+        if ((seen[index >>> 6] & bit) != 0) {
+            duplicates.increment();
+            return false;
+        }
+
+        seen[index >>> 6] |= bit;
+        return true;
+    }
+
+    private boolean advance(final long updateId) {
+        highest = updateId;
+        final int index = (int) (updateId & (window - 1));
+        seen[index >>> 6] |= 1L << index;
+        return true;
+    }
+
+    private void clear(final long updateId) {
+        final int index = (int) (updateId & (window - 1));
+        seen[index >>> 6] &= ~(1L << index);
+    }
+
+    private void load() {
+        loaded = true;
+        try {
+            updateOffsetRepository.findHighWater(botId, MARK_MAX_AGE).ifPresent(mark -> {
+                // which ids below the mark were received is unknown, so all of them count as seen
+                Arrays.fill(seen, -1L);
+                highest = mark;
+                flushed = mark;
+                log.info("update high-water mark {}", mark);
+            });
+        } catch (Exception e) {
+            log.warn("failed to load update high-water mark, duplicates may be processed: {}", e.getMessage());
+        }
+    }
+
+    private void flush() {
+        final long mark;
+        synchronized (this) {
+            if (highest == flushed) return;
+            mark = highest;
+        }
+
+        try {
+            updateOffsetRepository.save(botId, mark);
+            synchronized (this) {
+                flushed = mark;
+            }
+        } catch (Exception e) {
+            log.warn("failed to save update high-water mark: {}", e.getMessage());
+        }
+    }
+}
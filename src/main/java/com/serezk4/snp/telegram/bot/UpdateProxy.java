@@ -3,12 +3,20 @@ package com.serezk4.snp.telegram.bot;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
+import org.telegram.telegrambots.meta.api.objects.Document;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 
+import java.util.Comparator;
 import java.util.Optional;
 
 /**
  * Represents a Telegram update with additional utility methods for processing.
+ * <p>
+ * The fields the pipeline works with are extracted once, when the proxy is created; the proxy is
+ * immutable and is passed along instead of the raw {@link Update}.
  *
  * @author serezk4
  * @version 1.0
@@ -20,6 +28,35 @@ public final class UpdateProxy {
     Update self;
     QueryType queryType;
 
+    int updateId;
+    long chatId;
+    long userId;
+    int messageId;
+    String username;
+    String text;
+    /**
+     * Id to answer an inline query with, {@code null} for other updates.
+     */
+    String inlineQueryId;
+    /**
+     * Id to answer a button press with, {@code null} for other updates.
+     */
+    String callbackQueryId;
+    /**
+     * Callback data of a button press, {@code null} for other updates.
+     */
+    String callbackData;
+    /**
+     * Largest size of the attached photo, {@code null} if there is none.
+     */
+    PhotoSize photo;
+    Document document;
+    boolean userMessage;
+    /**
+     * Whether {@link #text} is a Mini App submission.
+     */
+    boolean webAppData;
+
     /**
      * Constructs a new {@code TUpdate} instance based on the provided {@code Update}.
      *
@@ -28,6 +65,54 @@ public final class UpdateProxy {
     public UpdateProxy(Update self) {
         this.self = self;
         this.queryType = determineQueryType(self);
+
+        final Message message = self.getMessage();
+
+        this.updateId = Optional.ofNullable(self.getUpdateId()).orElse(-1);
+        this.chatId = extractChatId(self, queryType);
+        this.userId = extractUserId(self, queryType);
+        this.messageId = extractMessageId(self, queryType);
+        this.username = extractUsername(self, queryType);
+        this.text = extractText(self, queryType);
+        this.inlineQueryId = queryType == QueryType.INLINE_QUERY ? self.getInlineQuery().getId() : null;
+        this.callbackQueryId = queryType == QueryType.CALLBACK_QUERY ? self.getCallbackQuery().getId() : null;
+        this.callbackData = queryType == QueryType.CALLBACK_QUERY ? self.getCallbackQuery().getData() : null;
+        this.photo = message != null && message.hasPhoto()
+                ? message.getPhoto().stream().max(Comparator.comparingInt(UpdateProxy::sizeOf)).orElse(null)
+                : null;
+        this.document = message != null && message.hasDocument() ? message.getDocument() : null;
+        this.userMessage = extractUserMessage(self, queryType);
+        this.webAppData = message != null && message.getWebAppData() != null;
+    }
+
+    private UpdateProxy(UpdateProxy source, String text, String callbackData) {
+        this.self = source.self;
+        this.queryType = source.queryType;
+        this.updateId = source.updateId;
+        this.chatId = source.chatId;
+        this.userId = source.userId;
+        this.messageId = source.messageId;
+        this.username = source.username;
+        this.text = text;
+        this.inlineQueryId = null;
+        this.callbackQueryId = null;
+        this.callbackData = callbackData;
+        this.photo = null;
+        this.document = null;
+        this.userMessage = source.userMessage;
+        this.webAppData = false;
+    }
+
+    /**
+     * Derives an update that answers a step with the given text or button, for answers that arrive
+     * several at once, e.g. in a Mini App submission.
+     *
+     * @param value    text, or callback data if {@code callback}.
+     * @param callback whether the answer is a button press.
+     * @return update carrying only the answer, with the ids of this one.
+     */
+    public UpdateProxy withAnswer(String value, boolean callback) {
+        return new UpdateProxy(this, value, callback ? value : null);
     }
 
     /**
@@ -65,12 +150,16 @@ public final class UpdateProxy {
         return QueryType.UNKNOWN;
     }
 
+    private static int sizeOf(PhotoSize photo) {
+        return photo.getFileSize() == null ? 0 : photo.getFileSize();
+    }
+
     /**
-     * Retrieves the message ID from the update based on the query type.
+     * Extracts the message ID from the update based on the query type.
      *
      * @return The message ID, or -1 if not applicable.
      */
-    public int getMessageId() {
+    private static int extractMessageId(Update self, QueryType queryType) {
         return switch (queryType) {
             case MESSAGE -> self.getMessage().getMessageId();
             case CALLBACK_QUERY -> self.getCallbackQuery().getMessage().getMessageId();
@@ -88,7 +177,7 @@ public final class UpdateProxy {
      * @param inlineMessageId The inline message ID as a string.
      * @return The parsed message ID, or -1 if parsing fails.
      */
-    private int parseInlineMessageId(String inlineMessageId) {
+    private static int parseInlineMessageId(String inlineMessageId) {
         try {
             return Integer.parseInt(inlineMessageId);
         } catch (NumberFormatException e) {
@@ -97,11 +186,11 @@ public final class UpdateProxy {
     }
 
     /**
-     * Retrieves the chat ID from the update based on the query type.
+     * Extracts the chat ID from the update based on the query type.
      *
      * @return The chat ID, or -1 if not applicable.
      */
-    public long getChatId() {
+    private static long extractChatId(Update self, QueryType queryType) {
         return switch (queryType) {
             case MESSAGE -> self.getMessage().getChatId();
             case CALLBACK_QUERY -> self.getCallbackQuery().getMessage().getChatId();
@@ -115,12 +204,35 @@ public final class UpdateProxy {
         };
     }
 
+    /**
+     * Extracts the ID of the user who caused the update.
+     *
+     * @return The user ID, or -1 if not applicable.
+     */
+    private static long extractUserId(Update self, QueryType queryType) {
+        final User from = switch (queryType) {
+            case MESSAGE -> self.getMessage().getFrom();
+            case CALLBACK_QUERY -> self.getCallbackQuery().getFrom();
+            case INLINE_QUERY -> self.getInlineQuery().getFrom();
+            case CHOSEN_INLINE_QUERY -> self.getChosenInlineQuery().getFrom();
+            case EDITED_MESSAGE -> self.getEditedMessage().getFrom();
+            case SHIPPING_QUERY -> self.getShippingQuery().getFrom();
+            case PRE_CHECKOUT_QUERY -> self.getPreCheckoutQuery().getFrom();
+            case POLL_ANSWER -> self.getPollAnswer().getUser();
+            case CHAT_JOIN_REQUEST -> self.getChatJoinRequest().getUser();
+            case CHAT_MEMBER_UPDATED_MY -> self.getMyChatMember().getFrom();
+            case CHAT_MEMBER_UPDATED -> self.getChatMember().getFrom();
+            default -> null;
+        };
+        return from == null ? -1 : from.getId();
+    }
+
     /**
      * Determines if the update is a user message.
      *
      * @return {@code true} if it's a user message, {@code false} otherwise.
      */
-    public boolean isUserMessage() {
+    private static boolean extractUserMessage(Update self, QueryType queryType) {
         return switch (queryType) {
             case MESSAGE -> self.getMessage().isUserMessage();
             case INLINE_QUERY -> !self.getInlineQuery().getFrom().getIsBot();
@@ -129,11 +241,11 @@ public final class UpdateProxy {
     }
 
     /**
-     * Retrieves the username associated with the update.
+     * Extracts the username associated with the update.
      *
      * @return The username, or {@code null} if not available.
      */
-    public String getUsername() {
+    private static String extractUsername(Update self, QueryType queryType) {
         return switch (queryType) {
             case MESSAGE -> self.getMessage().getChat().getUserName();
             case CALLBACK_QUERY -> self.getCallbackQuery().getFrom().getUserName();
@@ -153,11 +265,12 @@ public final class UpdateProxy {
     }
 
     /**
-     * Retrieves the text associated with the update.
+     * Extracts the text associated with the update: web app data, a document caption, the message
+     * text or the callback data.
      *
      * @return The text content, or {@code null} if not available.
      */
-    public String getText() {
+    private static String extractText(Update self, QueryType queryType) {
         if (self.getMessage() != null && self.getMessage().getWebAppData() != null) {
             return self.getMessage().getWebAppData().getData();
         }
@@ -0,0 +1,351 @@
+package com.serezk4.snp.telegram.broadcast;
+
+import com.serezk4.snp.database.model.BroadcastJob;
+import com.serezk4.snp.database.repository.BroadcastRecipientRepository.Recipient;
+import com.serezk4.snp.database.service.BroadcastService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.cluster.ClusterCoordinator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a message to every user.
+ * <p>
+ * Recipients are streamed from {@code users} by keyset pages, so memory does not depend on the
+ * number of users. Sends of a page run on virtual threads, at most {@code concurrency} at a time,
+ * and are paced to {@code rate} messages per second across all jobs; the rate stays below
+ * Telegram's global limit so interactive replies keep their share, and the sends use blocking calls
+ * that do not occupy the client's async dispatcher. A {@code 429} pushes the pace back by its
+ * {@code retry_after}. Progress is persisted after each page, so a job resumes after a restart, or on
+ * another instance.
+ * <p>
+ * While a job runs, its lease is renewed every third of {@code lease-ttl} independently of the
+ * sending, and the job stops sending as soon as a renewal fails: it was cancelled, taken over, or the
+ * lease can no longer be proven. Leases are held under a per-process owner and released on shutdown,
+ * so a replacement container picks its jobs up at once instead of waiting for the leases to expire.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Broadcaster {
+    private static final int FORBIDDEN = 403;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int RENEWALS_PER_LEASE = 3;
+    private static final Duration MIN_LEASE_TTL = Duration.ofSeconds(3);
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    BroadcastService broadcastService;
+    Client client;
+    String owner;
+
+    ExecutorService senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("broadcast-", 0).factory());
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "broadcast-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Jobs run by this instance.
+     */
+    Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Earliest {@link System#nanoTime()} at which the next message may be sent.
+     */
+    AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+    long interval;
+    int concurrency;
+    int pageSize;
+    Duration leaseTtl;
+    long renewInterval;
+
+    Counter sent;
+    Counter failed;
+    Counter blocked;
+    Counter throttled;
+
+    public Broadcaster(
+            final BroadcastService broadcastService,
+            final Client client,
+            final ClusterCoordinator clusterCoordinator,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.broadcast.rate:20}") int rate,
+            final @Value("${telegram.broadcast.concurrency:8}") int concurrency,
+            final @Value("${telegram.broadcast.page-size:500}") int pageSize,
+            final @Value("${telegram.broadcast.lease-ttl:60000}") long leaseTtl
+    ) {
+        if (rate < 1 || concurrency < 1 || pageSize < 1) {
+            throw new IllegalArgumentException("telegram.broadcast rate, concurrency and page-size must be positive");
+        }
+        if (leaseTtl < MIN_LEASE_TTL.toMillis()) {
+            throw new IllegalArgumentException("telegram.broadcast.lease-ttl must be at least " + MIN_LEASE_TTL);
+        }
+
+        this.broadcastService = broadcastService;
+        this.client = client;
+        // the host name survives a container restart, so it alone would let an old and a new process share a lease
+        this.owner = clusterCoordinator.getInstanceId() + "/" + UUID.randomUUID();
+        this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.concurrency = concurrency;
+        this.pageSize = pageSize;
+        this.leaseTtl = Duration.ofMillis(leaseTtl);
+        this.renewInterval = leaseTtl / RENEWALS_PER_LEASE;
+
+        this.sent = meterRegistry.counter("bot.broadcast.messages", "outcome", "sent");
+        this.failed = meterRegistry.counter("bot.broadcast.messages", "outcome", "failed");
+        this.blocked = meterRegistry.counter("bot.broadcast.messages", "outcome", "blocked");
+        this.throttled = meterRegistry.counter("bot.broadcast.throttled");
+    }
+
+    /**
+     * Resumes running jobs now and keeps picking up jobs whose owner stopped renewing the lease.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void resume() {
+        scheduler.scheduleWithFixedDelay(this::claimAbandoned, 0, leaseTtl.toMillis() / 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the jobs and releases their leases, so another instance, or the replacement of this one,
+     * resumes them from the last checkpoint right away.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+        if (!senders.awaitTermination(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("broadcast senders did not stop within {}", STOP_TIMEOUT);
+        }
+
+        try {
+            final int released = broadcastService.release(owner);
+            if (released > 0) log.info("released {} broadcast jobs", released);
+        } catch (Exception e) {
+            log.warn("failed to release broadcast jobs, they resume once the leases expire: {}", e.getMessage());
+        }
+    }
+
+    public BroadcastJob submit(final long chatId, final String text) {
+        final BroadcastJob job = broadcastService.save(BroadcastJob.builder()
+                .chatId(chatId)
+                .text(text)
+                .build());
+
+        start(job);
+        return job;
+    }
+
+    public boolean cancel(final long id) {
+        return broadcastService.cancel(id);
+    }
+
+    public List<BroadcastJob> findRunning() {
+        return broadcastService.findRunning();
+    }
+
+    private void claimAbandoned() {
+        try {
+            broadcastService.findRunning().stream()
+                    .filter(job -> !running.contains(job.getId()))
+                    .forEach(this::start);
+        } catch (Exception e) {
+            log.warn("failed to look for broadcast jobs: {}", e.getMessage());
+        }
+    }
+
+    private void start(final BroadcastJob job) {
+        if (!running.add(job.getId())) return;
+        if (!broadcastService.claim(job.getId(), owner, leaseTtl)) {
+            running.remove(job.getId());
+            return;
+        }
+
+        log.info("running broadcast job#{} after user#{}", job.getId(), job.getCursor());
+        final Lease lease = new Lease();
+        lease.renewal = scheduler.scheduleWithFixedDelay(
+                () -> renew(job.getId(), lease), renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        senders.execute(() -> {
+            try {
+                run(job, lease);
+            } finally {
+                lease.renewal.cancel(false);
+                running.remove(job.getId());
+            }
+        });
+    }
+
+    /**
+     * Extends the lease of a running job; on failure marks it lost, which stops the job's sending.
+     */
+    private void renew(final long id, final Lease lease) {
+        try {
+            if (broadcastService.claim(id, owner, leaseTtl)) return;
+            log.info("broadcast job#{} was cancelled or taken over, stopping", id);
+        } catch (Exception e) {
+            log.warn("failed to renew the lease of broadcast job#{}, stopping: {}", id, e.getMessage());
+        }
+
+        lease.lost = true;
+        lease.renewal.cancel(false);
+    }
+
+    private void run(final BroadcastJob job, final Lease lease) {
+        try {
+            List<Recipient> page = broadcastService.findRecipients(job.getCursor(), pageSize);
+            while (!page.isEmpty()) {
+                send(job, page, lease);
+                if (lease.lost) return;
+
+                job.setCursor(page.getLast().userId());
+                if (!broadcastService.checkpoint(job, owner, leaseTtl)) {
+                    log.info("broadcast job#{} was cancelled or taken over at user#{}", job.getId(), job.getCursor());
+                    return;
+                }
+                page = broadcastService.findRecipients(job.getCursor(), pageSize);
+            }
+
+            if (!broadcastService.finish(job.getId())) return;
+            log.info("broadcast job#{} finished: {} sent, {} blocked, {} failed",
+                    job.getId(), job.getSent(), job.getBlocked(), job.getFailed());
+            client.sendMessage(job.getChatId(),
+                    "Рассылка #%d завершена: доставлено %d, заблокировали бота %d, ошибок %d."
+                    .formatted(job.getId(), job.getSent(), job.getBlocked(), job.getFailed()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("broadcast job#{} interrupted, will resume", job.getId());
+        } catch (Exception e) {
+            log.error("broadcast job#{} stopped: {}, will resume", job.getId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends the message to every recipient of the page and adds the outcomes to the job; stops early,
+     * leaving the page unfinished, once the lease is lost.
+     */
+    private void send(
+            final BroadcastJob job,
+            final List<Recipient> page,
+            final Lease lease
+    ) throws InterruptedException {
+        final Semaphore permits = new Semaphore(concurrency);
+        final List<Future<Outcome>> outcomes = new ArrayList<>(page.size());
+
+        for (Recipient recipient : page) {
+            permits.acquire();
+            if (lease.lost) {
+                permits.release();
+                break;
+            }
+            outcomes.add(senders.submit(() -> {
+                try {
+                    return send(recipient.chatId(), job.getText());
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        for (Future<Outcome> outcome : outcomes) {
+            try {
+                switch (outcome.get()) {
+                    case SENT -> job.setSent(job.getSent() + 1);
+                    case BLOCKED -> job.setBlocked(job.getBlocked() + 1);
+                    case FAILED -> job.setFailed(job.getFailed() + 1);
+                }
+            } catch (ExecutionException e) {
+                job.setFailed(job.getFailed() + 1);
+            }
+        }
+    }
+
+    private Outcome send(final long chatId, final String text) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            pace();
+            try {
+                client.executeWithException(SendMessage.builder().chatId(chatId).text(text).build());
+                sent.increment();
+                return Outcome.SENT;
+            } catch (TelegramApiRequestException e) {
+                if (e.getErrorCode() != null && e.getErrorCode() == FORBIDDEN) {
+                    broadcastService.setBlocked(chatId, true);
+                    blocked.increment();
+                    return Outcome.BLOCKED;
+                }
+                if (e.getErrorCode() != null && e.getErrorCode() == TOO_MANY_REQUESTS && attempt < MAX_ATTEMPTS) {
+                    throttled.increment();
+                    backOff(e.getParameters() == null ? null : e.getParameters().getRetryAfter());
+                    continue;
+                }
+                log.debug("broadcast to {} failed: {}", chatId, e.getMessage());
+            } catch (TelegramApiException e) {
+                log.debug("broadcast to {} failed: {}", chatId, e.getMessage());
+            }
+
+            failed.increment();
+            return Outcome.FAILED;
+        }
+    }
+
+    /**
+     * Waits for the next free send slot; slots are {@code 1 / rate} apart.
+     */
+    private void pace() throws InterruptedException {
+        while (true) {
+            final long now = System.nanoTime();
+            final long slot = nextSlot.get();
+            final long start = Math.max(slot, now);
+
+            if (nextSlot.compareAndSet(slot, start + interval)) {
+                if (start > now) Thread.sleep(Duration.ofNanos(start - now));
+                return;
+            }
+        }
+    }
+
+    private void backOff(final Integer retryAfter) {
+        final long delay = TimeUnit.SECONDS.toNanos(retryAfter == null ? 1 : retryAfter);
+        nextSlot.accumulateAndGet(System.nanoTime() + delay, Math::max);
+    }
+
+    private enum Outcome {
+        SENT, BLOCKED, FAILED
+    }
+
+    /**
+     * Lease of a job run by this instance; {@code renewal} is set before the job starts.
+     */
+    private static final class Lease {
+        volatile boolean lost;
+        ScheduledFuture<?> renewal;
+    }
+}
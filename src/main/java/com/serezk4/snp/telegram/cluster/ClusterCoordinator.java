@@ -0,0 +1,249 @@
+package com.serezk4.snp.telegram.cluster;
+
+import com.serezk4.snp.database.repository.ShardLeaseRepository;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.session.manager.StepManager;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Splits chats between bot instances.
+ * <p>
+ * Chats are grouped into a fixed number of shards ({@code floorMod(chatId, shards)}). Every instance
+ * heartbeats into {@code cluster_members}, assigns shards round-robin over the live members and
+ * leases its share in {@code shard_leases}; shards that now belong to someone else are released and
+ * their step sessions dropped, telling their users to start over. An instance treats a shard as its
+ * own only until its lease would expire, so a stalled instance stops processing before the shard can
+ * be taken over.
+ * <p>
+ * Telegram allows one {@code getUpdates} consumer per token, so polling is done by the holder of a
+ * Postgres advisory lock, which forwards updates of foreign shards through the update inbox.
+ * <p>
+ * With {@code telegram.cluster.enabled=false} the instance owns every shard and polls directly.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class ClusterCoordinator {
+    private static final long POLLER_LOCK_KEY = 0x736e70_706f6c6cL;
+    private static final String SESSION_DROPPED =
+            "Начатое действие прервано из-за технических работ. Пожалуйста, начните его заново.";
+
+    ShardLeaseRepository shardLeaseRepository;
+    Client client;
+    @Getter boolean enabled;
+    @Getter String instanceId;
+    int shards;
+    long leaseTtl;
+    long heartbeatInterval;
+    String url;
+    String username;
+    String password;
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "cluster-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @NonFinal
+    volatile Ownership ownership;
+
+    @NonFinal
+    Connection pollerLock;
+
+    public ClusterCoordinator(
+            final ShardLeaseRepository shardLeaseRepository,
+            final Client client,
+            final @Value("${telegram.cluster.enabled:false}") boolean enabled,
+            final @Value("${telegram.cluster.instance-id:${HOSTNAME:local}}") String instanceId,
+            final @Value("${telegram.cluster.shards:64}") int shards,
+            final @Value("${telegram.cluster.lease-ttl:15000}") long leaseTtl,
+            final @Value("${telegram.cluster.heartbeat-interval:5000}") long heartbeatInterval,
+            final @Value("${spring.datasource.url}") String url,
+            final @Value("${spring.datasource.username}") String username,
+            final @Value("${spring.datasource.password}") String password
+    ) {
+        if (heartbeatInterval * 2 >= leaseTtl) {
+            throw new IllegalArgumentException("telegram.cluster.lease-ttl must exceed twice the heartbeat interval");
+        }
+
+        this.shardLeaseRepository = shardLeaseRepository;
+        this.client = client;
+        this.enabled = enabled;
+        this.instanceId = instanceId;
+        this.shards = shards;
+        this.leaseTtl = leaseTtl;
+        this.heartbeatInterval = heartbeatInterval;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+
+        this.ownership = new Ownership(new BitSet(shards), System.nanoTime());
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        log.info("cluster mode: instance {}, {} shards", instanceId, shards);
+        scheduler.scheduleWithFixedDelay(this::rebalance, 0, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) return;
+        scheduler.shutdownNow();
+        ownership = new Ownership(new BitSet(shards), System.nanoTime());
+
+        try {
+            shardLeaseRepository.leave(instanceId);
+        } catch (Exception e) {
+            log.warn("failed to leave the cluster: {}", e.getMessage());
+        }
+
+        closePollerLock();
+    }
+
+    public int shardOf(final long chatId) {
+        return Math.floorMod(chatId, shards);
+    }
+
+    /**
+     * Checks whether updates of the chat are processed by this instance.
+     *
+     * @param chatId chat id.
+     * @return {@code true} if the chat's shard is leased by this instance.
+     */
+    public boolean ownsChat(final long chatId) {
+        if (!enabled) return true;
+
+        final Ownership current = ownership;
+        return current.validUntil() - System.nanoTime() > 0 && current.shards().get(shardOf(chatId));
+    }
+
+    public Integer[] ownedShards() {
+        if (!enabled) return IntStream.range(0, shards).boxed().toArray(Integer[]::new);
+
+        final Ownership current = ownership;
+        if (current.validUntil() - System.nanoTime() <= 0) return new Integer[0];
+        return current.shards().stream().boxed().toArray(Integer[]::new);
+    }
+
+    /**
+     * Blocks until this instance may poll Telegram. Returns at once when cluster mode is off.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitPollerLeadership() throws InterruptedException {
+        if (!enabled) return;
+
+        while (true) {
+            try {
+                final Connection connection = DriverManager.getConnection(url, username, password);
+                if (tryAdvisoryLock(connection)) {
+                    pollerLock = connection;
+                    scheduler.scheduleWithFixedDelay(this::checkPollerLock,
+                            heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+                    log.info("instance {} is the poller", instanceId);
+                    return;
+                }
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("failed to acquire poller lock: {}", e.getMessage());
+            }
+
+            Thread.sleep(heartbeatInterval);
+        }
+    }
+
+    private void rebalance() {
+        try {
+            final long startedAt = System.nanoTime();
+            shardLeaseRepository.heartbeat(instanceId);
+
+            final List<String> members = shardLeaseRepository.findLiveMembers(leaseTtl);
+            final int index = Math.max(members.indexOf(instanceId), 0);
+            final int size = Math.max(members.size(), 1);
+
+            final BitSet target = new BitSet(shards);
+            IntStream.range(0, shards).filter(shard -> shard % size == index).forEach(target::set);
+            final Integer[] targetShards = target.stream().boxed().toArray(Integer[]::new);
+
+            // stop processing shards that moved away before their leases become claimable
+            final Ownership previous = ownership;
+            final BitSet kept = (BitSet) previous.shards().clone();
+            kept.and(target);
+            ownership = new Ownership(kept, previous.validUntil());
+            shardLeaseRepository.releaseExcept(instanceId, targetShards);
+
+            final BitSet owned = new BitSet(shards);
+            shardLeaseRepository.claim(instanceId, targetShards, leaseTtl).forEach(owned::set);
+            ownership = new Ownership(owned, startedAt + TimeUnit.MILLISECONDS.toNanos(leaseTtl - heartbeatInterval));
+
+            final BitSet lost = (BitSet) previous.shards().clone();
+            lost.andNot(owned);
+
+            if (!lost.isEmpty()) {
+                final List<Long> dropped =
+                        StepManager.getInstance().destroySessions(chatId -> lost.get(shardOf(chatId)));
+                // the new owner knows nothing of these sessions, so the users are asked to start over
+                dropped.forEach(chatId -> client.sendMessage(chatId, SESSION_DROPPED));
+                log.info("released shards {}, dropped {} step sessions", lost, dropped.size());
+            }
+            log.debug("members {}, owning {} of {} shards", members.size(), owned.cardinality(), shards);
+        } catch (Exception e) {
+            log.warn("cluster heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    private void checkPollerLock() {
+        try {
+            if (pollerLock.isValid((int) TimeUnit.MILLISECONDS.toSeconds(heartbeatInterval) + 1)) return;
+        } catch (SQLException ignored) {
+            // treated as lost below
+        }
+
+        // another instance may already be polling; exit and let the restart policy bring us back as a follower
+        log.error("lost the poller lock, shutting down");
+        closePollerLock();
+        System.exit(1);
+    }
+
+    private void closePollerLock() {
+        if (pollerLock == null) return;
+        try {
+            pollerLock.close();
+        } catch (SQLException e) {
+            log.warn("failed to close poller lock connection: {}", e.getMessage());
+        }
+    }
+
+    private static boolean tryAdvisoryLock(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_try_advisory_lock(" + POLLER_LOCK_KEY + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private record Ownership(BitSet shards, long validUntil) {
+    }
+}
@@ -0,0 +1,150 @@
+package com.serezk4.snp.telegram.cluster;
+
+import com.serezk4.snp.database.notification.PgNotificationListener;
+import com.serezk4.snp.database.repository.UpdateInboxRepository;
+import com.serezk4.snp.telegram.bot.Bot;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Processes updates that the polling instance forwarded to the shards owned by this instance.
+ * <p>
+ * The inbox is drained on every {@code update_inbox} notification and, in case one was missed,
+ * on a fixed interval. A batch is claimed for {@code telegram.cluster.inbox-claim-ttl} ms and deleted
+ * once all of its updates were processed; a batch of an instance that died is claimed again when the
+ * claim expires, so an update may be processed twice but is not lost.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class InboxConsumer {
+    UpdateInboxRepository updateInboxRepository;
+    ClusterCoordinator clusterCoordinator;
+    Bot bot;
+    int batchSize;
+    long pollInterval;
+    long claimTtl;
+
+    /**
+     * Differs between runs, so a restarted instance does not acknowledge what its predecessor claimed.
+     */
+    String claimant;
+
+    ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "update-inbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public InboxConsumer(
+            final UpdateInboxRepository updateInboxRepository,
+            final ClusterCoordinator clusterCoordinator,
+            final PgNotificationListener notificationListener,
+            final Bot bot,
+            final @Value("${telegram.cluster.inbox-batch-size:500}") int batchSize,
+            final @Value("${telegram.cluster.inbox-poll-interval:1000}") long pollInterval,
+            final @Value("${telegram.cluster.inbox-claim-ttl:60000}") long claimTtl
+    ) {
+        this.updateInboxRepository = updateInboxRepository;
+        this.clusterCoordinator = clusterCoordinator;
+        this.bot = bot;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.claimTtl = claimTtl;
+        this.claimant = clusterCoordinator.getInstanceId() + "/" + UUID.randomUUID();
+
+        if (clusterCoordinator.isEnabled()) {
+            notificationListener.subscribe(UpdateInboxRepository.CHANNEL, _ -> drainer.execute(this::drain),
+                    () -> drainer.execute(this::drain));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!clusterCoordinator.isEnabled()) return;
+        drainer.scheduleWithFixedDelay(this::drain, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        drainer.shutdownNow();
+    }
+
+    private void drain() {
+        try {
+            List<UpdateInboxRepository.Entry> entries;
+            do {
+                final Integer[] shards = clusterCoordinator.ownedShards();
+                if (shards.length == 0) return;
+
+                entries = updateInboxRepository.claim(shards, batchSize, claimant, claimTtl);
+                if (entries.isEmpty()) return;
+                process(entries);
+            } while (entries.size() == batchSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("failed to drain update inbox: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Routes the batch and waits until it is processed, which also keeps the inbox from being drained
+     * faster than the router works it off. The wait ends with the claim: entries whose processing failed
+     * or did not finish by then are not acknowledged and get claimed again once the claim expires.
+     */
+    private void process(final List<UpdateInboxRepository.Entry> entries) throws InterruptedException {
+        final Map<Long, CompletableFuture<Void>> processed = new LinkedHashMap<>(entries.size() * 2);
+        final List<Long> acknowledged = new ArrayList<>(entries.size());
+        for (UpdateInboxRepository.Entry entry : entries) {
+            final Update update;
+            try {
+                update = UpdateForwarder.read(entry.payload());
+            } catch (UncheckedIOException e) {
+                // redelivering it would fail the same way
+                log.error("dropped unreadable inbox entry {}: {}", entry.id(), e.getMessage());
+                acknowledged.add(entry.id());
+                continue;
+            }
+            // throws once the router is shut down; the batch is then left to expire and be claimed again
+            processed.put(entry.id(), bot.dispatch(new UpdateProxy(update)));
+        }
+
+        try {
+            CompletableFuture.allOf(processed.values().toArray(CompletableFuture[]::new))
+                    .get(claimTtl, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // a hung handler must not hold the drainer of every shard past the claim
+            log.warn("update inbox batch not fully processed within the claim: {}", e.toString());
+        }
+
+        processed.forEach((id, future) -> {
+            if (future.isDone() && !future.isCompletedExceptionally()) acknowledged.add(id);
+        });
+        if (acknowledged.size() < entries.size()) {
+            log.warn("{} of {} inbox entries left to be claimed again", entries.size() - acknowledged.size(),
+                    entries.size());
+        }
+        if (!acknowledged.isEmpty()) updateInboxRepository.acknowledge(acknowledged, claimant);
+    }
+}
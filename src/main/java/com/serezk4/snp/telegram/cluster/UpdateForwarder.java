@@ -0,0 +1,137 @@
+package com.serezk4.snp.telegram.cluster;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serezk4.snp.database.repository.UpdateInboxRepository;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands updates of foreign shards over to their owners through the update inbox.
+ * <p>
+ * Updates are buffered until the inbox accepts them, in arrival order; while the database is
+ * unavailable the buffer is retried with a growing delay, so a failed write neither loses the batch
+ * nor fails the poll. Past {@code telegram.cluster.forward-buffer} updates the oldest are dropped.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class UpdateForwarder {
+    static final ObjectMapper MAPPER = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private static final long MIN_RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = 30_000;
+
+    UpdateInboxRepository updateInboxRepository;
+    ClusterCoordinator clusterCoordinator;
+    int bufferSize;
+
+    Deque<UpdateInboxRepository.Entry> pending = new ArrayDeque<>();
+
+    ScheduledExecutorService retrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "update-forward-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Delay of the next retry; zero while no retry is scheduled.
+     */
+    @NonFinal
+    long retryDelay;
+
+    public UpdateForwarder(
+            final UpdateInboxRepository updateInboxRepository,
+            final ClusterCoordinator clusterCoordinator,
+            final @Value("${telegram.cluster.forward-buffer:100000}") int bufferSize
+    ) {
+        this.updateInboxRepository = updateInboxRepository;
+        this.clusterCoordinator = clusterCoordinator;
+        this.bufferSize = bufferSize;
+    }
+
+    @PreDestroy
+    public void stop() {
+        retrier.shutdownNow();
+        synchronized (this) {
+            if (!pending.isEmpty()) log.warn("{} forwarded updates were not written to the inbox", pending.size());
+        }
+    }
+
+    /**
+     * Queues the updates for their owners and writes them to the inbox, unless a retry is pending.
+     * Never throws: an update that cannot be serialized is logged and skipped.
+     *
+     * @param updates updates of chats owned by other instances.
+     */
+    public synchronized void forward(final List<UpdateProxy> updates) {
+        for (UpdateProxy update : updates) {
+            try {
+                pending.addLast(new UpdateInboxRepository.Entry(
+                        0, clusterCoordinator.shardOf(update.getChatId()), write(update.getSelf())));
+            } catch (UncheckedIOException e) {
+                log.error("failed to serialize update {}, dropped: {}", update.getUpdateId(), e.getMessage());
+            }
+        }
+
+        int dropped = 0;
+        while (pending.size() > bufferSize) {
+            pending.removeFirst();
+            dropped++;
+        }
+        if (dropped > 0) log.error("update inbox unavailable, dropped {} oldest forwarded updates", dropped);
+
+        // a scheduled retry writes the new updates after the older ones
+        if (retryDelay == 0) flush();
+    }
+
+    private synchronized void flush() {
+        if (pending.isEmpty()) {
+            retryDelay = 0;
+            return;
+        }
+
+        try {
+            updateInboxRepository.append(new ArrayList<>(pending));
+            pending.clear();
+            retryDelay = 0;
+        } catch (Exception e) {
+            retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            log.warn("failed to forward {} updates, retrying in {} ms: {}", pending.size(), retryDelay, e.getMessage());
+            retrier.schedule(this::flush, retryDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static Update read(final String payload) {
+        try {
+            return MAPPER.readValue(payload, Update.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(final Update update) {
+        try {
+            return MAPPER.writeValueAsString(update);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
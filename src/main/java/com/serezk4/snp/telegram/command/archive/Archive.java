@@ -0,0 +1,64 @@
+package com.serezk4.snp.telegram.command.archive;
+
+import com.serezk4.snp.database.model.RenderJob;
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.export.ArchiveExporter;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Re-renders stored questionnaires into zip archives: {@code /archive [dd.MM.yyyy]}.
+ * The optional date limits the job to questionnaires completed since that day.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Archive extends Command<Session> {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final OffsetDateTime ALL_TIME = OffsetDateTime.parse("1970-01-01T00:00:00Z");
+
+    Client client;
+    ArchiveExporter archiveExporter;
+
+    public Archive(final Client client, final ArchiveExporter archiveExporter) {
+        super(List.of("/archive"), "перегенерировать анкеты в архив [dd.MM.yyyy]", User.Role.ADMIN);
+        this.client = client;
+        this.archiveExporter = archiveExporter;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        final String text = update.getText();
+        final int space = text.indexOf(' ');
+
+        final OffsetDateTime since;
+        try {
+            since = space < 0
+                    ? ALL_TIME
+                    : LocalDate.parse(text.substring(space + 1).trim(), DATE_FORMAT)
+                    .atStartOfDay(ZoneId.systemDefault()).toOffsetDateTime();
+        } catch (DateTimeParseException e) {
+            client.sendMessage(context.getChatId(), "Неверный формат даты, ожидается dd.MM.yyyy");
+            return;
+        }
+
+        final RenderJob job = archiveExporter.submit(context.getChatId(), since);
+        client.sendMessage(context.getChatId(), "Задача #%d запущена.".formatted(job.getId()));
+    }
+}
@@ -0,0 +1,84 @@
+package com.serezk4.snp.telegram.command.broadcast;
+
+import com.serezk4.snp.database.model.BroadcastJob;
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.broadcast.Broadcaster;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Messages every user: {@code /broadcast <text>}; {@code /broadcast cancel <id>} stops a job and
+ * {@code /broadcast} alone lists running jobs.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Broadcast extends Command<Session> {
+    private static final String CANCEL = "cancel";
+
+    Client client;
+    Broadcaster broadcaster;
+
+    public Broadcast(final Client client, final Broadcaster broadcaster) {
+        super(List.of("/broadcast"), "рассылка всем пользователям <текст>", User.Role.ADMIN);
+        this.client = client;
+        this.broadcaster = broadcaster;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        final String text = update.getText();
+        final int space = text.indexOf(' ');
+        final String argument = space < 0 ? "" : text.substring(space + 1).strip();
+
+        if (argument.isEmpty()) {
+            client.sendMessage(context.getChatId(), status());
+            return;
+        }
+
+        final String[] args = argument.split("\\s+");
+        if (args.length == 2 && CANCEL.equals(args[0])) {
+            cancel(context.getChatId(), args[1]);
+            return;
+        }
+
+        final BroadcastJob job = broadcaster.submit(context.getChatId(), argument);
+        client.sendMessage(context.getChatId(), "Рассылка #%d запущена.".formatted(job.getId()));
+    }
+
+    private void cancel(final long chatId, final String id) {
+        final long jobId;
+        try {
+            jobId = Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            client.sendMessage(chatId, "Укажите номер рассылки: /broadcast cancel <id>");
+            return;
+        }
+
+        client.sendMessage(chatId, broadcaster.cancel(jobId)
+                ? "Рассылка #%d остановлена.".formatted(jobId)
+                : "Рассылка #%d не выполняется.".formatted(jobId));
+    }
+
+    private String status() {
+        final List<BroadcastJob> jobs = broadcaster.findRunning();
+        if (jobs.isEmpty()) return "Активных рассылок нет. Запуск: /broadcast <текст>";
+
+        return jobs.stream()
+                .map(job -> "#%d: доставлено %d, заблокировали бота %d, ошибок %d"
+                        .formatted(job.getId(), job.getSent(), job.getBlocked(), job.getFailed()))
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.serezk4.snp.telegram.command.export;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.export.UserCsvExporter;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Export extends Command<Session> {
+    Client client;
+    UserCsvExporter userCsvExporter;
+
+    public Export(final Client client, final UserCsvExporter userCsvExporter) {
+        super(List.of("/export"), "выгрузить пользователей в CSV", User.Role.ADMIN);
+        this.client = client;
+        this.userCsvExporter = userCsvExporter;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        userCsvExporter.submit(context.getChatId());
+        client.sendMessage(context.getChatId(), "Выгрузка пользователей запущена.");
+    }
+}
@@ -0,0 +1,45 @@
+package com.serezk4.snp.telegram.command.importing;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.export.UserCsvImporter;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Imports users from a CSV document sent with the {@code /import} caption.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Import extends Command<Session> {
+    Client client;
+    UserCsvImporter userCsvImporter;
+
+    public Import(final Client client, final UserCsvImporter userCsvImporter) {
+        super(List.of("/import"), "импорт пользователей из CSV (файл с подписью /import)", User.Role.ADMIN);
+        this.client = client;
+        this.userCsvImporter = userCsvImporter;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        if (update.getDocument() == null) {
+            client.sendMessage(context.getChatId(), "Отправьте CSV-файл с подписью /import.");
+            return;
+        }
+
+        userCsvImporter.submit(context.getChatId(), update.getDocument().getFileId());
+        client.sendMessage(context.getChatId(), "Импорт пользователей запущен.");
+    }
+}
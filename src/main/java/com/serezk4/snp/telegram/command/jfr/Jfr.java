@@ -0,0 +1,69 @@
+package com.serezk4.snp.telegram.command.jfr;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.jfr.FlightRecorderControl;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Flight Recorder control: {@code /jfr off|continuous|profile} switches the recording,
+ * {@code /jfr dump} sends what was recorded so far, {@code /jfr} shows the current mode.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Jfr extends Command<Session> {
+    Client client;
+    FlightRecorderControl flightRecorderControl;
+
+    public Jfr(final Client client, final FlightRecorderControl flightRecorderControl) {
+        super(List.of("/jfr"), "запись JFR: off, continuous, profile, dump", User.Role.ADMIN);
+        this.client = client;
+        this.flightRecorderControl = flightRecorderControl;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        final String[] args = update.getText().trim().split("\\s+");
+        final long chatId = context.getChatId();
+
+        try {
+            if (args.length < 2) {
+                client.sendMessage(chatId, "Режим JFR: %s".formatted(flightRecorderControl.getMode()));
+            } else if (args[1].equalsIgnoreCase("dump")) {
+                final Path file = flightRecorderControl.dump();
+                client.executeAsync(SendDocument.builder()
+                        .chatId(chatId)
+                        .document(new InputFile(file.toFile()))
+                        .caption("JFR, режим %s".formatted(flightRecorderControl.getMode()))
+                        .build());
+            } else {
+                flightRecorderControl.switchTo(FlightRecorderControl.Mode.valueOf(args[1].toUpperCase(Locale.ROOT)));
+                client.sendMessage(chatId, "Режим JFR: %s".formatted(flightRecorderControl.getMode()));
+            }
+        } catch (IllegalArgumentException e) {
+            client.sendMessage(chatId, "Неизвестный режим: %s. Доступны off, continuous, profile, dump."
+                    .formatted(args[1]));
+        } catch (Exception e) {
+            log.error("jfr command failed: {}", e.getMessage(), e);
+            client.sendMessage(chatId, "Ошибка JFR: %s".formatted(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.serezk4.snp.telegram.command.lock;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.service.UserService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Locks or unlocks a user by chat id: {@code /lock <chat_id>}, {@code /unlock <chat_id>}.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Lock extends Command<Session> {
+    private static final String LOCK = "/lock";
+
+    Client client;
+    UserService userService;
+
+    public Lock(final Client client, final UserService userService) {
+        super(List.of(LOCK, "/unlock"), "блокировка и разблокировка пользователя по chat id", User.Role.ADMIN);
+        this.client = client;
+        this.userService = userService;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        final String[] args = update.getText().trim().split("\\s+");
+        final boolean lock = LOCK.equals(args[0]);
+
+        final long chatId;
+        try {
+            chatId = Long.parseLong(args[args.length - 1]);
+        } catch (NumberFormatException e) {
+            client.sendMessage(context.getChatId(), "Укажите chat id: %s <chat_id>".formatted(args[0]));
+            return;
+        }
+
+        if (lock && chatId == context.getChatId()) {
+            client.sendMessage(context.getChatId(), "Нельзя заблокировать самого себя.");
+            return;
+        }
+
+        client.sendMessage(context.getChatId(), !userService.setLocked(chatId, lock)
+                ? "Пользователь %d не найден.".formatted(chatId)
+                : (lock ? "Пользователь %d заблокирован." : "Пользователь %d разблокирован.").formatted(chatId));
+    }
+}
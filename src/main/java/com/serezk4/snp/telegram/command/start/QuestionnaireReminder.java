@@ -0,0 +1,48 @@
+package com.serezk4.snp.telegram.command.start;
+
+import com.serezk4.snp.database.service.QuestionnaireService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.session.manager.StepManager;
+import com.serezk4.snp.telegram.session.step.StepSession;
+import com.serezk4.snp.telegram.timer.TimerHandler;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reminds a user who started the questionnaire and left it. Scheduled by {@link Start} when the
+ * session is created and cancelled once the questionnaire is saved or the session is abandoned.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+public final class QuestionnaireReminder implements TimerHandler {
+    static final String KIND = "questionnaire-reminder";
+
+    Client client;
+    QuestionnaireService questionnaireService;
+
+    @Override
+    public String kind() {
+        return KIND;
+    }
+
+    /**
+     * Reminds to continue if the questionnaire session is still open; if it is gone, e.g. after a
+     * restart, and nothing was saved, suggests starting over.
+     */
+    @Override
+    public void fire(final long chatId, final String payload) {
+        final StepSession session = StepManager.getInstance().getSession(chatId);
+
+        if (session != null) {
+            if (!(session.getCommand() instanceof Start)) return;
+            client.sendMessage(chatId, "Вы не закончили анкету. Ответьте на последний вопрос, чтобы продолжить.");
+            return;
+        }
+
+        if (questionnaireService.existsByChatId(chatId)) return;
+        client.sendMessage(chatId, "Вы не закончили анкету. Чтобы заполнить ее заново, отправьте /start");
+    }
+}
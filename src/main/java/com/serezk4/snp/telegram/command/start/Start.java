@@ -1,88 +1,317 @@
 package com.serezk4.snp.telegram.command.start;
 
+import com.serezk4.snp.database.model.Questionnaire;
 import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.service.QuestionnaireService;
 import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.Router;
 import com.serezk4.snp.telegram.bot.UpdateProxy;
 import com.serezk4.snp.telegram.command.SystemCommand;
+import com.serezk4.snp.telegram.jfr.UpdateScope;
 import com.serezk4.snp.telegram.session.Session;
 import com.serezk4.snp.telegram.session.SessionContext;
+import com.serezk4.snp.telegram.session.step.Abandonable;
+import com.serezk4.snp.telegram.session.step.Speculative;
 import com.serezk4.snp.telegram.session.step.Step;
 import com.serezk4.snp.telegram.session.step.StepSession;
+import com.serezk4.snp.telegram.session.step.WebAppForm;
+import com.serezk4.snp.telegram.timer.TimerService;
 import com.serezk4.snp.telegram.util.DocumentUtil;
+import com.serezk4.snp.telegram.util.FormUtil;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.PhotoSize;
+import org.telegram.telegrambots.meta.api.objects.webapp.WebAppInfo;
 
 import java.io.File;
-import java.util.Comparator;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Component
+@Log4j2
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
-public final class Start extends SystemCommand<StepSession> {
+public final class Start extends SystemCommand<StepSession> implements Speculative, WebAppForm, Abandonable {
+    private static final List<Step.Button.Inline> CONSENT_BUTTONS = List.of(
+            new Step.Button.Inline("Согласен", "agree"),
+            new Step.Button.Inline("Подробнее", "", "https://policies.google.com/privacy?hl=en-US")
+    );
+    private static final List<Step.Button.Inline> GENDER_BUTTONS = List.of(
+            new Step.Button.Inline("Мужской", "male"),
+            new Step.Button.Inline("Женский", "female")
+    );
+    private static final List<Step.Button.Inline> SUMMARY_BUTTONS = List.of(
+            new Step.Button.Inline("Все верно", "all_ok"),
+            new Step.Button.Inline("Отмена", StepSession.CANCEL_CALLBACK)
+    );
+
+    /**
+     * How often a wait for the prefetched photo checks for a cancel.
+     */
+    private static final Duration PREEMPTION_CHECK_INTERVAL = Duration.ofMillis(100);
+
+    /**
+     * Consent given with the reply button shown next to the Mini App one.
+     */
+    private static final String CONSENT_TEXT = "Согласен";
+
+    /**
+     * Fields of the Mini App submission, in the order of the steps they answer.
+     */
+    private static final List<String> FORM_FIELDS = List.of("consent", "fullName", "birthDate", "gender");
+
+    /**
+     * How button answers are shown in the summary.
+     */
+    private static final Map<String, String> ANSWER_LABELS = Map.of(
+            "agree", "Согласен с обработкой персональных данных",
+            CONSENT_TEXT, "Согласен с обработкой персональных данных",
+            "male", "Мужской",
+            "female", "Женский"
+    );
+
     Client client;
+    QuestionnaireService questionnaireService;
+    TimerService timerService;
+    /**
+     * Silence after which a user who left the questionnaire is reminded of it.
+     */
+    Duration reminderDelay;
+    /**
+     * Mini App filling the whole questionnaire; {@code null} if not deployed.
+     */
+    WebAppInfo webApp;
 
-    public Start(final Client client) {
+    public Start(
+            final Client client,
+            final QuestionnaireService questionnaireService,
+            final TimerService timerService,
+            final @Value("${telegram.timers.questionnaire-reminder:1800000}") long reminderDelay,
+            final @Value("${telegram.webapp.questionnaire-url:}") String webAppUrl
+    ) {
         super(List.of("/start"), "запустить бота");
         this.client = client;
+        this.questionnaireService = questionnaireService;
+        this.timerService = timerService;
+        this.reminderDelay = Duration.ofMillis(reminderDelay);
+        this.webApp = webAppUrl.isBlank() ? null : new WebAppInfo(webAppUrl);
     }
 
+    /**
+     * Renders the document, then saves the questionnaire and sends the document. A cancel that arrives
+     * before the save drops the questionnaire; after it, the cancel comes too late.
+     */
     @Override
     public void execute(
             final UpdateProxy update,
             final SessionContext context,
             final User user
     ) {
-        final String fullName = new UpdateProxy(context.getMessages().get(2)).getText();
-        final String birthDate = new UpdateProxy(context.getMessages().get(3)).getText();
-        final String gender = new UpdateProxy(context.getMessages().get(4)).getText().equals("male")
-                ? "Мужской"
-                : "Женский";
-        final PhotoSize photo = context.getMessages().get(5).getMessage().getPhoto().stream()
-                .max(Comparator.comparingInt(PhotoSize::getFileSize))
-                .orElseThrow();
-
-        Objects.requireNonNull(photo);
-        Objects.requireNonNull(fullName);
-        Objects.requireNonNull(birthDate);
-        Objects.requireNonNull(gender);
-
-        final String downloadPath = "./downloads/%s.jpg".formatted(photo.getFileId());
-        final File localFile = client.downloadFile(photo, downloadPath);
-        final String outputPath = "%s.docx".formatted(user.getId().toString().concat("-анкета"));
+        final Router.Preemption preemption = Router.preemption();
+        final Answers answers = Answers.of(context);
 
-        DocumentUtil.generateDocument(fullName, birthDate, gender, localFile.getPath(), outputPath);
+        final File document = render(answers, context.takePrefetch(answers.photo().getFileId()), user, preemption);
+        if (document == null || preemption.yieldIfRequested()) return;
+
+        save(answers, context, user);
+        send(document, context);
+    }
+
+    /**
+     * Renders the document while the user looks at the summary; the questionnaire itself is saved only
+     * on confirmation.
+     */
+    @Override
+    public Callable<File> speculate(final SessionContext context, final User user) {
+        final Answers answers = Answers.of(context);
+        final Future<File> prefetch = context.takePrefetch(answers.photo().getFileId());
+        // runs off the chat's queue and changes nothing, so it is not preempted
+        return () -> render(answers, prefetch, user, Router.Preemption.NONE);
+    }
+
+    @Override
+    public void deliver(final UpdateProxy update, final SessionContext context, final User user, final File artifact) {
+        if (Router.preemption().yieldIfRequested()) return;
 
+        save(Answers.of(context), context, user);
+        send(artifact, context);
+    }
+
+    private void save(final Answers answers, final SessionContext context, final User user) {
+        questionnaireService.save(Questionnaire.builder()
+                .userId(user.getId())
+                .chatId(context.getChatId())
+                .fullName(answers.fullName())
+                .birthDate(answers.birthDate())
+                .gender(answers.gender())
+                .photoFileId(answers.photo().getFileId())
+                .build());
+        timerService.cancel(context.getChatId(), QuestionnaireReminder.KIND);
+    }
+
+    /**
+     * @return the rendered document, or {@code null} if preempted while downloading or rendering.
+     */
+    private File render(
+            final Answers answers,
+            final Future<File> prefetch,
+            final User user,
+            final Router.Preemption preemption
+    ) {
+        if (preemption.yieldIfRequested()) return null;
+        final File localFile = download(answers.photo(), prefetch, preemption);
+        if (preemption.yieldIfRequested()) return null;
+
+        final String outputPath = "%s.docx".formatted(user.getId().toString().concat("-анкета"));
+        final boolean rendered = DocumentUtil.generateDocument(answers.fullName(), answers.birthDate(),
+                answers.gender(), localFile == null ? null : localFile.getPath(), outputPath, preemption);
+        return rendered ? new File(outputPath) : null;
+    }
+
+    private void send(final File document, final SessionContext context) {
         client.executeAsync(SendDocument.builder()
-                .document(new InputFile(new File(outputPath)))
+                .document(new InputFile(document))
                 .chatId(context.getChatId())
                 .caption("Ваша анкета")
                 .build());
     }
 
+    /**
+     * Answers consent, name, birth date and gender; the photo cannot be sent from a Mini App and is
+     * asked for next. Values are checked by the steps, so a bad one is reported like a typed answer.
+     */
+    @Override
+    public List<Answer> answers(final String payload) {
+        if (webApp == null) return List.of();
+
+        final Map<String, String> values = FormUtil.parse(payload, FORM_FIELDS);
+        if (!values.keySet().containsAll(FORM_FIELDS)) return List.of();
+
+        return List.of(
+                Answer.text(Boolean.parseBoolean(values.get("consent")) ? CONSENT_TEXT : ""),
+                Answer.text(values.get("fullName").strip()),
+                Answer.text(values.get("birthDate").strip()),
+                Answer.callback(values.get("gender"))
+        );
+    }
+
+    /**
+     * Takes the photo prefetched by the session, waiting for it while not preempted; downloads it again
+     * if the prefetch was not started or failed, the same way, so a preemption aborts either download.
+     *
+     * @return the photo, or {@code null} if it could not be downloaded or the wait was preempted.
+     */
+    private File download(final PhotoSize photo, final Future<File> prefetch, final Router.Preemption preemption) {
+        if (prefetch != null) {
+            final File file = take(prefetch, preemption);
+            if (file != null || preemption.isRequested() || Thread.currentThread().isInterrupted()) return file;
+            log.debug("photo prefetch failed, downloading again");
+        }
+
+        return take(StepSession.download(client, photo, UpdateScope.chatId(), UpdateScope.updateId()), preemption);
+    }
+
+    /**
+     * @return the downloaded photo, or {@code null} if the download failed or the wait was preempted or
+     *         interrupted, in which case the download is cancelled.
+     */
+    private static File take(final Future<File> download, final Router.Preemption preemption) {
+        try {
+            return await(download, preemption);
+        } catch (InterruptedException e) {
+            download.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            log.debug("photo download failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the downloaded photo, or {@code null} if the download failed or the wait was preempted, in
+     *         which case the download is cancelled.
+     */
+    private static File await(final Future<File> download, final Router.Preemption preemption)
+            throws InterruptedException, ExecutionException {
+        while (true) {
+            try {
+                return download.get(PREEMPTION_CHECK_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!preemption.isRequested()) continue;
+                // the download runs on its own thread, so interrupting it closes no shared connection
+                download.cancel(true);
+                return null;
+            }
+        }
+    }
+
+    private record Answers(String fullName, String birthDate, String gender, PhotoSize photo) {
+        private static Answers of(final SessionContext context) {
+            final Answers answers = new Answers(
+                    context.getMessages().get(2).getText(),
+                    context.getMessages().get(3).getText(),
+                    ANSWER_LABELS.get(context.getMessages().get(4).getCallbackData()),
+                    context.getMessages().get(5).getPhoto()
+            );
+
+            Objects.requireNonNull(answers.photo());
+            Objects.requireNonNull(answers.fullName());
+            Objects.requireNonNull(answers.birthDate());
+            Objects.requireNonNull(answers.gender());
+            return answers;
+        }
+    }
+
+    /**
+     * With a Mini App deployed consent is given with a reply button, since only reply keyboard buttons
+     * let a Mini App send data back; the inline consent button is used otherwise.
+     */
+    private Step.Data consentStep() {
+        final String text = "<b>Согласие на обработку данных:</b>\n" +
+                "Нажимая кнопку \"Согласен\" вы соглашаетесь на обработку ваших данных " +
+                "в соответствии с политикой конфиденциальности.";
+        final String errorMessage = "Для продолжения вы должны нажать кнопку \"Согласиться\"";
+
+        if (webApp == null) {
+            return Step.Data.builder()
+                    .text(text)
+                    .inlineButtons(CONSENT_BUTTONS)
+                    .errorMessage(errorMessage)
+                    .rowSize(2)
+                    .build();
+        }
+
+        return Step.Data.builder()
+                .text(text.concat("\n\nАнкету можно заполнить целиком в приложении."))
+                .replyButtons(List.of(
+                        new Step.Button.Reply("Заполнить в приложении", webApp),
+                        new Step.Button.Reply(CONSENT_TEXT)
+                ))
+                .inputPattern(CONSENT_TEXT)
+                .errorMessage(errorMessage)
+                .rowSize(1)
+                .build();
+    }
+
     @Override
     public Session createSession(Long chatId) {
+        timerService.schedule(chatId, QuestionnaireReminder.KIND, null, reminderDelay);
         return new StepSession(List.of(
-                new Step((_, _, _) -> Step.Data.builder()
-                        .text("<b>Согласие на обработку данных:</b>\n" +
-                                "Нажимая кнопку \"Согласен\" вы соглашаетесь на обработку ваших данных " +
-                                "в соответствии с политикой конфиденциальности.")
-                        .inlineButtons(List.of(
-                                new Step.Button.Inline("Согласен", "agree"),
-                                new Step.Button.Inline(
-                                        "Подробнее", "",
-                                        "https://policies.google.com/privacy?hl=en-US"
-                                )
-                        ))
-                        .inputPattern(".*agree")
-                        .errorMessage("Для продолжения вы должны нажать кнопку \"Согласиться\"")
-                        .rowSize(2)
-                        .build()),
+                new Step((_, _, _) -> consentStep()),
                 new Step((_, _, _) -> Step.Data.builder()
                         .text("<b>Введите ФИО:</b>")
                         .inputPattern("[А-Яа-я]+ [А-Яа-я]+( [А-Яа-я]+)?")
@@ -95,36 +324,36 @@ public final class Start extends SystemCommand<StepSession> {
                         .build()),
                 new Step((_, _, _) -> Step.Data.builder()
                         .text("<b>Выберите пол:</b>")
-                        .inlineButtons(List.of(
-                                new Step.Button.Inline("Мужской", "male"),
-                                new Step.Button.Inline("Женский", "female")
-                        ))
-                        .inputPattern(".*male|female")
+                        .inlineButtons(GENDER_BUTTONS)
                         .errorMessage("Выберите один из вариантов")
                         .rowSize(2)
                         .build()),
                 new Step((_, _, _) -> Step.Data.builder()
                         .text("<b>Прикрепите фотографию:</b>")
                         .requirePhoto(true)
+                        .prefetchPhoto(true)
                         .build()),
                 new Step((_, _, context) -> Step.Data.builder()
                         .text("<b>Проверьте введенные данные:</b>%n%s".formatted(
                                 context.getMessages().subList(1, context.getMessages().size()).stream()
-                                        .map(UpdateProxy::new).map(UpdateProxy::getText)
+                                        .map(UpdateProxy::getText)
                                         .filter(text -> text != null && !text.isBlank())
+                                        .map(text -> ANSWER_LABELS.getOrDefault(text, text))
                                         .collect(Collectors.joining("\n"))
-                                        .replaceAll(".*\\$agree",
-                                                "Согласен обработкой персональных данных"
-                                        )
-                                        .replaceAll(".*\\$male", "Мужской")
-                                        .replaceAll(".*\\$female", "Женский")
-                        ))
-                        .inlineButtons(List.of(
-                                new Step.Button.Inline("Все верно", "all_ok"),
-                                new Step.Button.Inline("Отмена", "cancel")
                         ))
+                        .inlineButtons(SUMMARY_BUTTONS)
                         .rowSize(2)
+                        .speculate(true)
                         .build())
         ), this, chatId).setSaveUsersMessages(false);
     }
+
+    /**
+     * The user cancelled the questionnaire or the session was dropped; either way there is nothing left to
+     * remind of.
+     */
+    @Override
+    public void abandon(final long chatId) {
+        timerService.cancel(chatId, QuestionnaireReminder.KIND);
+    }
 }
@@ -0,0 +1,95 @@
+package com.serezk4.snp.telegram.command.utm;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.model.UtmStats;
+import com.serezk4.snp.database.service.UtmStatsService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.session.Session;
+import com.serezk4.snp.telegram.session.SessionContext;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.ParseMode;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports registrations, completed questionnaires and conversion per UTM source. A long report is
+ * split into several messages at line boundaries, each within the message length limit.
+ */
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Utm extends Command<Session> {
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+    private static final String HEADER = "<b>UTM: регистрации / анкеты (конверсия)</b>";
+
+    Client client;
+    UtmStatsService utmStatsService;
+
+    public Utm(final Client client, final UtmStatsService utmStatsService) {
+        super(List.of("/utm"), "отчет по UTM-меткам", User.Role.ADMIN);
+        this.client = client;
+        this.utmStatsService = utmStatsService;
+    }
+
+    @Override
+    public void execute(
+            final UpdateProxy update,
+            final SessionContext context,
+            final User user
+    ) {
+        final List<UtmStats> stats = utmStatsService.findAll();
+        final List<String> lines = stats.isEmpty()
+                ? List.of("Данных пока нет.")
+                : stats.stream().map(Utm::format).toList();
+
+        final List<String> pages = paginate(lines);
+        for (int i = 0; i < pages.size(); i++) {
+            final String header = pages.size() == 1 ? HEADER : "%s, %d/%d".formatted(HEADER, i + 1, pages.size());
+
+            // sent one by one so the parts arrive in order
+            client.execute(SendMessage.builder()
+                    .chatId(context.getChatId())
+                    .text(header.concat("\n").concat(pages.get(i)))
+                    .parseMode(ParseMode.HTML)
+                    .build());
+        }
+    }
+
+    /**
+     * Joins lines into pages that fit a message together with the header and its page number.
+     */
+    private static List<String> paginate(final List<String> lines) {
+        final int limit = MAX_MESSAGE_LENGTH - HEADER.length() - ", 9999/9999\n".length();
+
+        final List<String> pages = new ArrayList<>();
+        final StringBuilder page = new StringBuilder();
+        for (String line : lines) {
+            if (!page.isEmpty() && page.length() + 1 + line.length() > limit) {
+                pages.add(page.toString());
+                page.setLength(0);
+            }
+            if (!page.isEmpty()) page.append('\n');
+            page.append(line);
+        }
+        pages.add(page.toString());
+        return pages;
+    }
+
+    private static String format(final UtmStats stats) {
+        final double conversion = stats.getRegistrations() == 0
+                ? 0
+                : 100.0 * stats.getCompleted() / stats.getRegistrations();
+
+        return "<code>%s</code>: %d / %d (%.1f%%)".formatted(
+                escape(stats.getUtm()), stats.getRegistrations(), stats.getCompleted(), conversion);
+    }
+
+    private static String escape(final String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -1,6 +1,8 @@
 package com.serezk4.snp.telegram.configuration;
 
-import com.serezk4.snp.database.service.UserService;
+import com.serezk4.snp.database.event.UpdateEventWriter;
+import com.serezk4.snp.database.service.BroadcastService;
+import com.serezk4.snp.database.service.ReactiveUserService;
 import com.serezk4.snp.telegram.bot.Client;
 import com.serezk4.snp.telegram.bot.Handler;
 import com.serezk4.snp.telegram.command.Command;
@@ -16,11 +18,13 @@ import java.util.List;
 public class HandlerConfiguration {
     @Bean
     public Handler tHandler(
-            final UserService userService,
+            final ReactiveUserService reactiveUserService,
             final Client client,
+            final UpdateEventWriter updateEventWriter,
+            final BroadcastService broadcastService,
             final List<Command<? extends Session>> commands
     ) {
         commands.forEach(command -> log.info("registered command: {}", command.getClass().getSimpleName()));
-        return new Handler(commands, userService, client);
+        return new Handler(commands, reactiveUserService, client, updateEventWriter, broadcastService);
     }
 }
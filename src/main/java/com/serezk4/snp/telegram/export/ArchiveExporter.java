@@ -0,0 +1,247 @@
+package com.serezk4.snp.telegram.export;
+
+import com.serezk4.snp.database.model.Questionnaire;
+import com.serezk4.snp.database.model.RenderJob;
+import com.serezk4.snp.database.service.QuestionnaireService;
+import com.serezk4.snp.database.service.RenderJobService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.util.DocumentUtil;
+import com.serezk4.snp.telegram.util.StreamingUpload;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Re-renders stored questionnaires and uploads them as zip archives.
+ * <p>
+ * Questionnaires are read by keyset pages on {@code id} and rendered in parallel on a dedicated
+ * {@link ForkJoinPool}. Rendered documents of a page are kept in memory only until they are written
+ * into the archive, and the page size adapts to the observed document size so a page never exceeds
+ * the configured memory budget. The archive is streamed straight into the upload; it is split into
+ * parts to stay below the bot API upload limit, and the job cursor is persisted after each uploaded
+ * part so an interrupted job resumes from the first part that was not delivered.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class ArchiveExporter {
+    private static final int INITIAL_DOCUMENT_SIZE = 64 * 1024;
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    QuestionnaireService questionnaireService;
+    RenderJobService renderJobService;
+    Client client;
+
+    ForkJoinPool renderPool;
+    ExecutorService jobs = Executors.newSingleThreadExecutor();
+
+    int parallelism;
+    long memoryBudget;
+    long partSize;
+
+    public ArchiveExporter(
+            final QuestionnaireService questionnaireService,
+            final RenderJobService renderJobService,
+            final Client client,
+            final @Value("${telegram.export.parallelism:4}") int parallelism,
+            final @Value("${telegram.export.memory-budget:67108864}") long memoryBudget,
+            final @Value("${telegram.export.part-size:45000000}") long partSize
+    ) {
+        this.questionnaireService = questionnaireService;
+        this.renderJobService = renderJobService;
+        this.client = client;
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+        this.partSize = partSize;
+        this.renderPool = new ForkJoinPool(parallelism);
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void resume() {
+        renderJobService.findRunning().forEach(job -> {
+            log.info("resuming render job#{} after questionnaire#{}", job.getId(), job.getCursor());
+            jobs.execute(() -> run(job));
+        });
+    }
+
+    public RenderJob submit(final long chatId, final OffsetDateTime since) {
+        final RenderJob job = renderJobService.save(RenderJob.builder()
+                .chatId(chatId)
+                .since(since)
+                .build());
+
+        jobs.execute(() -> run(job));
+        return job;
+    }
+
+    private void run(final RenderJob job) {
+        final Progress progress = new Progress(job.getChatId(), job.getProcessed(),
+                job.getProcessed() + questionnaireService.count(job.getCursor(), job.getSince()));
+
+        try {
+            while (exportPart(job, progress)) {
+                log.info("render job#{}: part {} uploaded, {} documents",
+                        job.getId(), job.getPart(), job.getProcessed());
+            }
+
+            renderJobService.save(job.setStatus(RenderJob.Status.DONE));
+            log.info("render job#{} finished: {} documents, {} docs/s", job.getId(), job.getProcessed(),
+                    "%.1f".formatted(progress.rate(job.getProcessed())));
+            client.sendMessage(job.getChatId(), "Перегенерация завершена: %d анкет, %d архив(ов)."
+                    .formatted(job.getProcessed(), job.getPart()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("render job#{} interrupted, will resume on restart", job.getId());
+        } catch (Exception e) {
+            log.error("render job#{} failed: {}", job.getId(), e.getMessage(), e);
+            renderJobService.save(job.setStatus(RenderJob.Status.FAILED));
+            client.sendMessage(job.getChatId(), "Перегенерация анкет завершилась с ошибкой.");
+        }
+    }
+
+    private boolean exportPart(final RenderJob job, final Progress progress) throws IOException, InterruptedException {
+        final List<Questionnaire> first = questionnaireService.findPage(
+                job.getCursor(), job.getSince(), parallelism * 4);
+        if (first.isEmpty()) return false;
+
+        final int part = job.getPart() + 1;
+        final Checkpoint checkpoint = StreamingUpload.upload(
+                client, job.getChatId(),
+                "questionnaires-%d-%d.zip".formatted(job.getId(), part),
+                "Анкеты, часть %d".formatted(part),
+                out -> writePart(job, first, out, progress)
+        );
+
+        renderJobService.save(job
+                .setCursor(checkpoint.cursor())
+                .setProcessed(job.getProcessed() + checkpoint.count())
+                .setPart(part));
+        return true;
+    }
+
+    private Checkpoint writePart(
+            final RenderJob job,
+            final List<Questionnaire> first,
+            final OutputStream out,
+            final Progress progress
+    ) throws IOException, ExecutionException, InterruptedException {
+        long cursor = job.getCursor();
+        long count = 0;
+        long written = 0;
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            List<Questionnaire> batch = first;
+            while (!batch.isEmpty()) {
+                final List<byte[]> documents = render(batch);
+
+                long batchBytes = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    zip.putNextEntry(new ZipEntry(entryName(batch.get(i))));
+                    zip.write(documents.get(i));
+                    zip.closeEntry();
+                    batchBytes += documents.get(i).length;
+                }
+
+                cursor = batch.getLast().getId();
+                count += batch.size();
+                written += batchBytes;
+                progress.update(job.getProcessed() + count);
+
+                if (written >= partSize) break;
+                batch = questionnaireService.findPage(cursor, job.getSince(), nextBatchSize(batchBytes, batch.size()));
+            }
+        }
+
+        return new Checkpoint(cursor, count);
+    }
+
+    private List<byte[]> render(final List<Questionnaire> batch) throws ExecutionException, InterruptedException {
+        return renderPool.submit(() -> batch.parallelStream().map(this::render).toList()).get();
+    }
+
+    private byte[] render(final Questionnaire questionnaire) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_DOCUMENT_SIZE);
+        DocumentUtil.generateDocument(
+                questionnaire.getFullName(),
+                questionnaire.getBirthDate(),
+                questionnaire.getGender(),
+                photoPath(questionnaire.getPhotoFileId()),
+                out
+        );
+        return out.toByteArray();
+    }
+
+    private String photoPath(final String fileId) {
+        final String path = DocumentUtil.PHOTO_PATH.formatted(fileId);
+        if (new File(path).exists()) return path;
+
+        final File downloaded = client.downloadFile(fileId, path);
+        return downloaded == null ? null : downloaded.getPath();
+    }
+
+    private int nextBatchSize(final long batchBytes, final int batchSize) {
+        final long averageSize = Math.max(1, batchBytes / batchSize);
+        return Math.clamp(memoryBudget / averageSize, parallelism, MAX_BATCH_SIZE);
+    }
+
+    private static String entryName(final Questionnaire questionnaire) {
+        return "%d-%s.docx".formatted(questionnaire.getId(), questionnaire.getFullName().replace(' ', '_'));
+    }
+
+    private record Checkpoint(long cursor, long count) {
+    }
+
+    private final class Progress {
+        private final long chatId;
+        private final long initial;
+        private final long total;
+        private final long startedAt = System.nanoTime();
+        private Integer messageId;
+
+        private Progress(final long chatId, final long initial, final long total) {
+            this.chatId = chatId;
+            this.initial = initial;
+            this.total = total;
+        }
+
+        private double rate(final long processed) {
+            final double seconds = Math.max(1e-3, (System.nanoTime() - startedAt) / 1e9);
+            return (processed - initial) / seconds;
+        }
+
+        private void update(final long processed) {
+            final String text = "Перегенерация анкет: %d/%d (%.1f док/с)".formatted(processed, total, rate(processed));
+
+            if (messageId == null) {
+                final Message message = client.execute(SendMessage.builder().chatId(chatId).text(text).build());
+                messageId = message == null ? null : message.getMessageId();
+                return;
+            }
+
+            client.executeAsync(EditMessageText.builder()
+                    .chatId(chatId).messageId(messageId)
+                    .text(text)
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.serezk4.snp.telegram.export;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.repository.UserExportRepository;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.util.CsvUtil;
+import com.serezk4.snp.telegram.util.StreamingUpload;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Uploads the whole {@code users} table as CSV.
+ * <p>
+ * Rows go from the JDBC cursor through a single reused line buffer into the upload pipe, so memory
+ * use does not depend on the table size. The output is split into numbered parts of about
+ * {@code telegram.export.part-size} bytes, each with the header, to stay below the bot API upload
+ * limit; pages are shrunk as a part fills up so a part overshoots its size by a few rows at most.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class UserCsvExporter {
+    public static final String HEADER = "id,chat_id,username,created_at,account_non_locked,role,utm\n";
+
+    private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+
+    UserExportRepository userExportRepository;
+    Client client;
+    int pageSize;
+    long partSize;
+
+    ExecutorService exports = Executors.newSingleThreadExecutor();
+
+    public UserCsvExporter(
+            final UserExportRepository userExportRepository,
+            final Client client,
+            final @Value("${telegram.export.page-size:10000}") int pageSize,
+            final @Value("${telegram.export.part-size:45000000}") long partSize
+    ) {
+        this.userExportRepository = userExportRepository;
+        this.client = client;
+        this.pageSize = pageSize;
+        this.partSize = partSize;
+    }
+
+    public void submit(final long chatId) {
+        exports.execute(() -> export(chatId));
+    }
+
+    private void export(final long chatId) {
+        final long startedAt = System.nanoTime();
+        final LocalDate date = LocalDate.now();
+
+        try {
+            Checkpoint checkpoint = new Checkpoint(0L, 0L, false);
+            int part = 0;
+            do {
+                final long after = checkpoint.cursor();
+                part++;
+                checkpoint = StreamingUpload.upload(
+                        client, chatId,
+                        "users-%s-%d.csv".formatted(date, part),
+                        "Пользователи, часть %d".formatted(part),
+                        out -> write(out, after)
+                ).after(checkpoint);
+                // a part that ended exactly with the table would otherwise be followed by an empty one
+            } while (!checkpoint.done() && userExportRepository.streamPage(checkpoint.cursor(), 1, _ -> { }) >= 0);
+
+            final double seconds = (System.nanoTime() - startedAt) / 1e9;
+            log.info("exported {} users in {} parts in {}s", checkpoint.rows(), part, "%.1f".formatted(seconds));
+            client.sendMessage(chatId, "Выгружено пользователей: %d, файлов: %d, за %.1f с."
+                    .formatted(checkpoint.rows(), part, seconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("failed to export users: {}", e.getMessage(), e);
+            client.sendMessage(chatId, "Не удалось выгрузить пользователей.");
+        }
+    }
+
+    /**
+     * Writes one part: pages after {@code after} until the part reaches its size or the table ends.
+     *
+     * @return the part's last id and row count.
+     */
+    private Checkpoint write(final OutputStream outputStream, final long after) throws IOException {
+        final CountingOutputStream counter = new CountingOutputStream(outputStream);
+        final Writer writer = new BufferedWriter(
+                new OutputStreamWriter(counter, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        final StringBuilder line = new StringBuilder(256);
+        final long[] rows = {0L};
+
+        writer.write(HEADER);
+
+        long cursor = after;
+        while (true) {
+            final long before = rows[0];
+            final int limit = nextPageSize(counter.count, before);
+            final long last = userExportRepository.streamPage(cursor, limit, rs -> {
+                writeRow(writer, line, rs);
+                rows[0]++;
+            });
+            writer.flush();
+
+            if (last < 0 || rows[0] - before < limit) {
+                return new Checkpoint(last < 0 ? cursor : last, rows[0], true);
+            }
+            cursor = last;
+            log.debug("exported users up to id {}", cursor);
+
+            if (counter.count >= partSize) return new Checkpoint(cursor, rows[0], false);
+        }
+    }
+
+    /**
+     * Shrinks the page to what is left of the part, judging by the average row written so far.
+     */
+    private int nextPageSize(final long written, final long rows) {
+        if (rows == 0) return pageSize;
+
+        final long averageRow = Math.max(1, (written - HEADER.length()) / rows);
+        return (int) Math.clamp((partSize - written) / averageRow, 1, pageSize);
+    }
+
+    private static void writeRow(final Writer writer, final StringBuilder line, final ResultSet rs)
+            throws SQLException {
+        line.setLength(0);
+        line.append(rs.getLong("id")).append(CsvUtil.SEPARATOR)
+                .append(rs.getLong("chat_id")).append(CsvUtil.SEPARATOR);
+        CsvUtil.appendField(line, rs.getString("username")).append(CsvUtil.SEPARATOR)
+                .append(rs.getObject("created_at", OffsetDateTime.class)).append(CsvUtil.SEPARATOR)
+                .append(rs.getBoolean("account_non_locked")).append(CsvUtil.SEPARATOR)
+                .append(User.Role.values()[rs.getInt("role")].name()).append(CsvUtil.SEPARATOR);
+        CsvUtil.appendField(line, rs.getString("utm")).append('\n');
+
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param cursor last exported id.
+     * @param rows   rows exported so far, of one part or, after {@link #after}, of the whole export.
+     * @param done   whether the table ended.
+     */
+    private record Checkpoint(long cursor, long rows, boolean done) {
+        private Checkpoint after(final Checkpoint previous) {
+            return new Checkpoint(cursor, previous.rows() + rows, done);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.serezk4.snp.telegram.export;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.service.UserService;
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.util.CsvUtil;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bulk import of users from a CSV document, e.g. when migrating from another bot.
+ * <p>
+ * Accepts the format produced by {@link UserCsvExporter}; only {@code chat_id} is required. Rows are
+ * inserted in chunks, one transaction per chunk, and chats that are already registered are skipped,
+ * so an interrupted import can simply be repeated.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class UserCsvImporter {
+    UserService userService;
+    Client client;
+    int chunkSize;
+
+    ExecutorService imports = Executors.newSingleThreadExecutor();
+
+    public UserCsvImporter(
+            final UserService userService,
+            final Client client,
+            final @Value("${telegram.export.import-chunk-size:5000}") int chunkSize
+    ) {
+        this.userService = userService;
+        this.client = client;
+        this.chunkSize = chunkSize;
+    }
+
+    public void submit(final long chatId, final String fileId) {
+        imports.execute(() -> importUsers(chatId, fileId));
+    }
+
+    private void importUsers(final long chatId, final String fileId) {
+        final long startedAt = System.nanoTime();
+        long read = 0;
+        long inserted = 0;
+        Integer progressMessageId = null;
+
+        try {
+            final File file = client.executeWithException(new GetFile(fileId));
+
+            try (InputStream in = client.downloadFileAsStream(file);
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                final Map<String, Integer> columns = columns(CsvUtil.readRecord(reader));
+                if (!columns.containsKey("chat_id")) {
+                    client.sendMessage(chatId, "В файле нет колонки chat_id.");
+                    return;
+                }
+
+                final List<User> chunk = new ArrayList<>(chunkSize);
+                List<String> fields;
+                while ((fields = CsvUtil.readRecord(reader)) != null) {
+                    if (fields.size() == 1 && fields.getFirst().isBlank()) continue;
+                    chunk.add(toUser(fields, columns));
+                    read++;
+
+                    if (chunk.size() == chunkSize) {
+                        inserted += userService.importChunk(chunk);
+                        chunk.clear();
+                        progressMessageId = progress(chatId, progressMessageId, read, inserted, startedAt);
+                    }
+                }
+
+                if (!chunk.isEmpty()) inserted += userService.importChunk(chunk);
+            }
+
+            final double seconds = (System.nanoTime() - startedAt) / 1e9;
+            log.info("imported {} of {} users in {}s", inserted, read, "%.1f".formatted(seconds));
+            client.sendMessage(chatId, "Импорт завершен: строк %d, добавлено %d, пропущено %d, %.0f строк/с."
+                    .formatted(read, inserted, read - inserted, read / Math.max(seconds, 1e-3)));
+        } catch (Exception e) {
+            log.error("user import failed after {} rows: {}", read, e.getMessage(), e);
+            client.sendMessage(chatId, "Импорт прерван после %d строк (добавлено %d): %s"
+                    .formatted(read, inserted, e.getMessage()));
+        }
+    }
+
+    private Integer progress(
+            final long chatId,
+            final Integer messageId,
+            final long read,
+            final long inserted,
+            final long startedAt
+    ) {
+        final double seconds = Math.max((System.nanoTime() - startedAt) / 1e9, 1e-3);
+        final String text = "Импорт: строк %d, добавлено %d (%.0f строк/с)".formatted(read, inserted, read / seconds);
+
+        if (messageId == null) {
+            final Message message = client.execute(SendMessage.builder().chatId(chatId).text(text).build());
+            return message == null ? null : message.getMessageId();
+        }
+
+        client.executeAsync(EditMessageText.builder().chatId(chatId).messageId(messageId).text(text).build());
+        return messageId;
+    }
+
+    private static Map<String, Integer> columns(final List<String> names) {
+        final Map<String, Integer> columns = new HashMap<>();
+        if (names == null) return columns;
+
+        for (int i = 0; i < names.size(); i++) columns.put(names.get(i).strip().toLowerCase(), i);
+        return columns;
+    }
+
+    private static User toUser(final List<String> fields, final Map<String, Integer> columns) {
+        final User.UserBuilder builder = User.builder()
+                .chatId(Long.parseLong(field(fields, columns, "chat_id")))
+                .username(emptyToNull(field(fields, columns, "username")))
+                .utm(emptyToNull(field(fields, columns, "utm")));
+
+        final String createdAt = field(fields, columns, "created_at");
+        if (createdAt != null && !createdAt.isEmpty()) builder.createdAt(OffsetDateTime.parse(createdAt));
+
+        final String accountNonLocked = field(fields, columns, "account_non_locked");
+        if (accountNonLocked != null && !accountNonLocked.isEmpty()) {
+            builder.accountNonLocked(Boolean.parseBoolean(accountNonLocked));
+        }
+
+        final String role = field(fields, columns, "role");
+        if (role != null && !role.isEmpty()) builder.role(User.Role.valueOf(role));
+
+        return builder.build();
+    }
+
+    private static String field(final List<String> fields, final Map<String, Integer> columns, final String name) {
+        final Integer index = columns.get(name);
+        return index == null || index >= fields.size() ? null : fields.get(index).strip();
+    }
+
+    private static String emptyToNull(final String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
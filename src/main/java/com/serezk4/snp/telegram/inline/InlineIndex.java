@@ -0,0 +1,171 @@
+package com.serezk4.snp.telegram.inline;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.session.Session;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory search over what the bot can offer in inline mode: commands available to every user
+ * and text templates. Built once at startup and read-only afterwards.
+ * <p>
+ * Every query token is looked up as a prefix of the indexed words; tokens of three or more
+ * characters without a prefix match fall back to trigram similarity, so typos still find
+ * something. Entries are ranked by the summed score of all tokens.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class InlineIndex {
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final double PREFIX_SCORE = 2;
+    private static final double MIN_TRIGRAM_SIMILARITY = 0.5;
+
+    private static final List<Entry> TEMPLATES = List.of(
+            new Entry("tpl:questionnaire", "Анкета",
+                    "пригласить заполнить анкету",
+                    "Заполните анкету в боте: откройте чат с ботом и отправьте /start"),
+            new Entry("tpl:privacy", "Политика конфиденциальности",
+                    "ссылка на политику обработки данных",
+                    "Политика конфиденциальности: https://policies.google.com/privacy?hl=en-US")
+    );
+
+    List<Entry> entries;
+    NavigableMap<String, int[]> words;
+    Map<String, int[]> trigrams;
+
+    public InlineIndex(final List<Command<? extends Session>> commands) {
+        final List<Entry> all = new ArrayList<>();
+        commands.stream()
+                .filter(command -> command.getRequiredRole() == User.Role.MIN)
+                .map(command -> new Entry(
+                        "cmd:" + command.getUsage().getFirst(),
+                        command.getUsage().getFirst(),
+                        command.getHelp(),
+                        command.getUsage().getFirst()))
+                .forEach(all::add);
+        all.addAll(TEMPLATES);
+        this.entries = List.copyOf(all);
+
+        final Map<String, Set<Integer>> wordPostings = new HashMap<>();
+        final Map<String, Set<Integer>> trigramPostings = new HashMap<>();
+        for (int id = 0; id < entries.size(); id++) {
+            final Entry entry = entries.get(id);
+            for (String word : tokenize(entry.title() + " " + entry.description())) {
+                wordPostings.computeIfAbsent(word, _ -> new HashSet<>()).add(id);
+                for (String trigram : trigramsOf(word)) {
+                    trigramPostings.computeIfAbsent(trigram, _ -> new HashSet<>()).add(id);
+                }
+            }
+        }
+        this.words = freeze(new TreeMap<>(), wordPostings);
+        this.trigrams = freeze(new HashMap<>(), trigramPostings);
+
+        log.info("inline index: {} entries, {} words, {} trigrams", entries.size(), words.size(), trigrams.size());
+    }
+
+    /**
+     * Normalizes a query, so that queries differing only in case, punctuation or spacing share a
+     * cache entry.
+     *
+     * @param query raw inline query.
+     * @return normalized query.
+     */
+    public static String normalize(final String query) {
+        return query == null ? "" : String.join(" ", tokenize(query));
+    }
+
+    /**
+     * Finds the best entries for a normalized query.
+     *
+     * @param query normalized query, see {@link #normalize}.
+     * @param limit maximal number of entries.
+     * @return entries, best first; all entries for an empty query.
+     */
+    public List<Entry> search(final String query, final int limit) {
+        if (query.isEmpty()) return entries.subList(0, Math.min(limit, entries.size()));
+
+        final double[] scores = new double[entries.size()];
+        for (String token : query.split(" ")) score(token, scores);
+
+        return IntStream.range(0, scores.length)
+                .filter(id -> scores[id] > 0)
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(id -> -scores[id]).thenComparingInt(id -> id))
+                .limit(limit)
+                .map(entries::get)
+                .toList();
+    }
+
+    private void score(final String token, final double[] scores) {
+        final Collection<int[]> prefixed = words.subMap(token, true, token + Character.MAX_VALUE, false).values();
+        if (!prefixed.isEmpty()) {
+            final Set<Integer> matched = new HashSet<>();
+            prefixed.forEach(ids -> Arrays.stream(ids).forEach(matched::add));
+            matched.forEach(id -> scores[id] += PREFIX_SCORE);
+            return;
+        }
+
+        final List<String> tokenTrigrams = trigramsOf(token);
+        if (tokenTrigrams.isEmpty()) return;
+
+        final int[] shared = new int[entries.size()];
+        for (String trigram : tokenTrigrams) {
+            final int[] ids = trigrams.get(trigram);
+            if (ids != null) for (int id : ids) shared[id]++;
+        }
+
+        for (int id = 0; id < shared.length; id++) {
+            final double similarity = (double) shared[id] / tokenTrigrams.size();
+            if (similarity >= MIN_TRIGRAM_SIMILARITY) scores[id] += similarity;
+        }
+    }
+
+    private static List<String> tokenize(final String text) {
+        return Arrays.stream(SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+                .filter(word -> !word.isEmpty())
+                .toList();
+    }
+
+    private static List<String> trigramsOf(final String word) {
+        if (word.length() < 3) return List.of();
+        return IntStream.rangeClosed(0, word.length() - 3)
+                .mapToObj(i -> word.substring(i, i + 3))
+                .distinct()
+                .toList();
+    }
+
+    private static <M extends Map<String, int[]>> M freeze(final M target, final Map<String, Set<Integer>> postings) {
+        postings.forEach((key, ids) -> target.put(key, ids.stream().mapToInt(Integer::intValue).sorted().toArray()));
+        return target;
+    }
+
+    /**
+     * Indexed inline result.
+     *
+     * @param id          result id, unique and at most 64 bytes.
+     * @param title       title shown in the result list.
+     * @param description description shown under the title.
+     * @param text        message sent when the result is chosen.
+     */
+    public record Entry(String id, String title, String description, String text) {
+    }
+}
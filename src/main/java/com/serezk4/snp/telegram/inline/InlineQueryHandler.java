@@ -0,0 +1,130 @@
+package com.serezk4.snp.telegram.inline;
+
+import com.serezk4.snp.telegram.bot.Client;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.inputmessagecontent.InputTextMessageContent;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResult;
+import org.telegram.telegrambots.meta.api.objects.inlinequery.result.InlineQueryResultArticle;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers inline queries straight from the long polling thread: no user lookup, no command
+ * matching and no per-chat queue, since an answer is only useful while the user is still typing.
+ * <p>
+ * Results come from the {@link InlineIndex} and are cached per normalized query for a short TTL;
+ * the cache is dropped entirely when it reaches its maximal size.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class InlineQueryHandler {
+    private static final int MAX_RESULTS = 50;
+
+    InlineIndex inlineIndex;
+    Client client;
+    long ttlNanos;
+    int maxSize;
+    int resultLimit;
+    int cacheTime;
+
+    Map<String, CachedAnswer> answers = new ConcurrentHashMap<>();
+
+    Counter queries;
+    Counter cacheHits;
+    Counter chosen;
+    Timer latency;
+
+    public InlineQueryHandler(
+            final InlineIndex inlineIndex,
+            final Client client,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.inline.cache-ttl:30000}") long ttlMillis,
+            final @Value("${telegram.inline.cache-max-size:10000}") int maxSize,
+            final @Value("${telegram.inline.result-limit:20}") int resultLimit,
+            final @Value("${telegram.inline.cache-time:300}") int cacheTime
+    ) {
+        this.inlineIndex = inlineIndex;
+        this.client = client;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.maxSize = maxSize;
+        this.resultLimit = Math.min(resultLimit, MAX_RESULTS);
+        this.cacheTime = cacheTime;
+
+        this.queries = meterRegistry.counter("bot.inline.queries");
+        this.cacheHits = meterRegistry.counter("bot.inline.cache.hits");
+        this.chosen = meterRegistry.counter("bot.inline.chosen");
+        this.latency = meterRegistry.timer("bot.inline.latency");
+        meterRegistry.gaugeMapSize("bot.inline.cache.size", List.of(), answers);
+    }
+
+    /**
+     * Checks whether the update belongs to inline mode and is handled here.
+     *
+     * @param update incoming update.
+     * @return {@code true} for inline queries and chosen inline results.
+     */
+    public boolean accepts(final UpdateProxy update) {
+        return update.getQueryType() == UpdateProxy.QueryType.INLINE_QUERY
+                || update.getQueryType() == UpdateProxy.QueryType.CHOSEN_INLINE_QUERY;
+    }
+
+    public void handle(final UpdateProxy update) {
+        if (update.getQueryType() == UpdateProxy.QueryType.CHOSEN_INLINE_QUERY) {
+            chosen.increment();
+            return;
+        }
+
+        final long startedAt = System.nanoTime();
+        queries.increment();
+
+        final List<InlineQueryResult> results = resultsFor(InlineIndex.normalize(update.getText()), startedAt);
+
+        client.executeAsync(AnswerInlineQuery.builder()
+                        .inlineQueryId(update.getInlineQueryId())
+                        .results(results)
+                        .cacheTime(cacheTime)
+                        .isPersonal(false)
+                        .build())
+                .whenComplete((_, throwable) -> {
+                    latency.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                    if (throwable != null) log.warn("failed to answer inline query: {}", throwable.getMessage());
+                });
+    }
+
+    private List<InlineQueryResult> resultsFor(final String query, final long now) {
+        final CachedAnswer cached = answers.get(query);
+        if (cached != null && cached.expiresAt() - now > 0) {
+            cacheHits.increment();
+            return cached.results();
+        }
+
+        final List<InlineQueryResult> results = inlineIndex.search(query, resultLimit).stream()
+                .<InlineQueryResult>map(entry -> InlineQueryResultArticle.builder()
+                        .id(entry.id())
+                        .title(entry.title())
+                        .description(entry.description())
+                        .inputMessageContent(InputTextMessageContent.builder().messageText(entry.text()).build())
+                        .build())
+                .toList();
+
+        if (answers.size() >= maxSize) answers.clear();
+        answers.put(query, new CachedAnswer(results, now + ttlNanos));
+        return results;
+    }
+
+    private record CachedAnswer(List<InlineQueryResult> results, long expiresAt) {
+    }
+}
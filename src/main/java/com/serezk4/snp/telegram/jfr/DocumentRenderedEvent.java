@@ -0,0 +1,24 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.DocumentRendered")
+@Label("Document Rendered")
+@Description("Rendering of a questionnaire document")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class DocumentRenderedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+
+    @Label("With Photo")
+    public boolean withPhoto;
+}
@@ -0,0 +1,145 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Controls the in-process Flight Recorder recording.
+ * <p>
+ * {@link Mode#CONTINUOUS} keeps a bounded on-disk recording with the JDK default settings plus the
+ * update lifecycle events above latency thresholds ({@code jfr/continuous.jfc}), cheap enough to
+ * leave on in production. {@link Mode#PROFILE} switches the same recording to the JDK profile
+ * settings with every lifecycle event ({@code jfr/profile.jfc}). The mode can be changed at runtime
+ * with {@code /jfr}; the .jfc files also work with {@code jcmd <pid> JFR.start settings=...}.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class FlightRecorderControl {
+    private static final DateTimeFormatter DUMP_NAME = DateTimeFormatter.ofPattern("'snp-'yyyyMMdd-HHmmss'.jfr'");
+
+    Mode initialMode;
+    Path directory;
+    Duration maxAge;
+    long maxSize;
+
+    @NonFinal
+    Recording recording;
+
+    @Getter
+    @NonFinal
+    Mode mode = Mode.OFF;
+
+    public FlightRecorderControl(
+            final @Value("${telegram.jfr.mode:continuous}") String mode,
+            final @Value("${telegram.jfr.directory:./jfr}") String directory,
+            final @Value("${telegram.jfr.max-age:21600000}") long maxAge,
+            final @Value("${telegram.jfr.max-size:104857600}") long maxSize
+    ) {
+        this.initialMode = Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+        this.directory = Path.of(directory);
+        this.maxAge = Duration.ofMillis(maxAge);
+        this.maxSize = maxSize;
+    }
+
+    public enum Mode {
+        OFF, CONTINUOUS, PROFILE
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            switchTo(initialMode);
+        } catch (IOException | ParseException e) {
+            log.error("failed to start flight recording: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (recording != null) recording.close();
+        recording = null;
+        mode = Mode.OFF;
+    }
+
+    /**
+     * Starts, reconfigures or stops the recording. Reconfiguring keeps the data recorded so far.
+     *
+     * @param target new mode.
+     * @throws IOException    if the settings cannot be read.
+     * @throws ParseException if the settings are malformed.
+     */
+    public synchronized void switchTo(final Mode target) throws IOException, ParseException {
+        if (target == Mode.OFF) {
+            stop();
+            log.info("flight recording stopped");
+            return;
+        }
+
+        final Map<String, String> settings = settings(target);
+        if (recording == null) {
+            recording = new Recording(settings);
+            recording.setName("snp");
+            recording.setToDisk(true);
+            recording.setMaxAge(maxAge);
+            recording.setMaxSize(maxSize);
+            recording.start();
+        } else {
+            recording.setSettings(settings);
+        }
+
+        mode = target;
+        log.info("flight recording mode: {}", target);
+    }
+
+    /**
+     * Writes the data recorded so far to a new file.
+     *
+     * @return the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null) throw new IllegalStateException("flight recording is off");
+
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(DUMP_NAME.format(LocalDateTime.now()));
+        recording.dump(file);
+        return file;
+    }
+
+    private static Map<String, String> settings(final Mode mode) throws IOException, ParseException {
+        final String jdk = mode == Mode.PROFILE ? "profile" : "default";
+        final String own = "/jfr/%s.jfc".formatted(mode.name().toLowerCase(Locale.ROOT));
+
+        final Map<String, String> settings = new HashMap<>(Configuration.getConfiguration(jdk).getSettings());
+        try (InputStream in = FlightRecorderControl.class.getResourceAsStream(own);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(reader).getSettings());
+        }
+        return settings;
+    }
+}
@@ -0,0 +1,29 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.PhotoDownloaded")
+@Label("Photo Downloaded")
+@Description("Download of a photo from Telegram to local disk")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class PhotoDownloadedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+
+    @Label("File Id")
+    public String fileId;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,30 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.StepExecuted")
+@Label("Step Executed")
+@Description("Processing of an update by a step session")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class StepExecutedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+
+    @Label("Command")
+    public String command;
+
+    @Label("Step")
+    public int step;
+
+    @Label("State")
+    public String state;
+}
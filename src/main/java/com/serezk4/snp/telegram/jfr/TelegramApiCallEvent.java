@@ -0,0 +1,30 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.TelegramApiCall")
+@Label("Telegram API Call")
+@Description("Bot API request, until its response arrived")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class TelegramApiCallEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Async")
+    public boolean async;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,21 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.UpdateDequeued")
+@Label("Update Dequeued")
+@Description("Time the update waited behind earlier updates of its chat")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class UpdateDequeuedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+}
@@ -0,0 +1,24 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.UpdateReceived")
+@Label("Update Received")
+@Description("Update handed over by the long poller")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class UpdateReceivedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+
+    @Label("Query Type")
+    public String queryType;
+}
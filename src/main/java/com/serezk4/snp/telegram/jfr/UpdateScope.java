@@ -0,0 +1,34 @@
+package com.serezk4.snp.telegram.jfr;
+
+/**
+ * Chat and update being processed by the current thread, for events raised deep inside the
+ * processing (Bot API calls, downloads, rendering) that do not see the update themselves.
+ */
+public final class UpdateScope {
+    private static final ThreadLocal<Ids> CURRENT = new ThreadLocal<>();
+
+    private UpdateScope() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    public static void enter(final long chatId, final int updateId) {
+        CURRENT.set(new Ids(chatId, updateId));
+    }
+
+    public static void exit() {
+        CURRENT.remove();
+    }
+
+    public static long chatId() {
+        final Ids ids = CURRENT.get();
+        return ids == null ? 0 : ids.chatId();
+    }
+
+    public static int updateId() {
+        final Ids ids = CURRENT.get();
+        return ids == null ? 0 : ids.updateId();
+    }
+
+    private record Ids(long chatId, int updateId) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.serezk4.snp.telegram.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.serezk4.snp.UserLoaded")
+@Label("User Loaded")
+@Description("Lookup or registration of the user who sent the update")
+@Category({"SNP", "Updates"})
+@StackTrace(false)
+public final class UserLoadedEvent extends Event {
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Update Id")
+    public int updateId;
+}
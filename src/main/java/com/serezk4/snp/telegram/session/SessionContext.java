@@ -5,17 +5,89 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
-import org.telegram.telegrambots.meta.api.objects.Update;
-import org.telegram.telegrambots.meta.api.objects.message.Message;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @Getter
 @RequiredArgsConstructor
 @Builder
 public final class SessionContext {
-    List<Update> messages = new LinkedList<>();
+    List<UpdateProxy> messages = new LinkedList<>();
     Map<String, Object> data = new HashMap<>();
     Long chatId;
+
+    /**
+     * Media downloads started while the session was still running, by Telegram file id.
+     */
+    Map<String, Future<File>> prefetches = new ConcurrentHashMap<>();
+
+    /**
+     * Artifact of the session's command being prepared ahead of confirmation, see {@code Speculative}.
+     */
+    AtomicReference<Future<File>> speculation = new AtomicReference<>();
+
+    public void prefetch(final String fileId, final Future<File> download) {
+        final Future<File> previous = prefetches.put(fileId, download);
+        if (previous != null) previous.cancel(true);
+    }
+
+    /**
+     * Hands a prefetched download over to the caller, which becomes responsible for it.
+     *
+     * @param fileId Telegram file id.
+     * @return the download, finished or in progress, or {@code null} if none was started.
+     */
+    public Future<File> takePrefetch(final String fileId) {
+        return prefetches.remove(fileId);
+    }
+
+    /**
+     * Stops downloads that are still running and deletes the files of finished ones; called when the
+     * session is aborted and nobody is going to use them.
+     */
+    public void cancelPrefetches() {
+        prefetches.values().forEach(download -> {
+            if (download.cancel(true)) return;
+            if (download.state() == Future.State.SUCCESS && download.resultNow() != null) {
+                download.resultNow().delete();
+            }
+        });
+        prefetches.clear();
+    }
+
+    public void speculate(final Future<File> artifact) {
+        discard(speculation.getAndSet(artifact));
+    }
+
+    /**
+     * Hands the speculated artifact over to the caller, which becomes responsible for it.
+     *
+     * @return the artifact, finished or in progress, or {@code null} if none was started.
+     */
+    public Future<File> takeSpeculation() {
+        return speculation.getAndSet(null);
+    }
+
+    /**
+     * Stops the speculation, or deletes its artifact if it already finished.
+     *
+     * @return whether there was a speculation to discard.
+     */
+    public boolean discardSpeculation() {
+        return discard(speculation.getAndSet(null));
+    }
+
+    private static boolean discard(final Future<File> artifact) {
+        if (artifact == null) return false;
+        if (!artifact.cancel(true) && artifact.state() == Future.State.SUCCESS && artifact.resultNow() != null) {
+            artifact.resultNow().delete();
+        }
+        return true;
+    }
 }
@@ -2,9 +2,12 @@ package com.serezk4.snp.telegram.session.manager;
 
 import com.serezk4.snp.telegram.session.step.StepSession;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.function.LongPredicate;
 
 public class StepManager {
     private static StepManager instance = null;
@@ -35,4 +38,20 @@ public class StepManager {
         if (!stepSessions.containsKey(chatId)) return null;
         return stepSessions.get(chatId).pop();
     }
+
+    /**
+     * Aborts and removes the sessions of the matching chats.
+     *
+     * @return chats that had an open session.
+     */
+    public synchronized List<Long> destroySessions(LongPredicate chatIds) {
+        final List<Long> destroyed = new ArrayList<>();
+        stepSessions.entrySet().removeIf(entry -> {
+            if (!chatIds.test(entry.getKey())) return false;
+            if (!entry.getValue().isEmpty()) destroyed.add(entry.getKey());
+            entry.getValue().forEach(StepSession::abort);
+            return true;
+        });
+        return destroyed;
+    }
 }
@@ -0,0 +1,14 @@
+package com.serezk4.snp.telegram.session.step;
+
+/**
+ * Command of a step flow that keeps something outside its session, e.g. a timer, to let go of when
+ * the session ends without completing: cancelled by the user or dropped by {@link StepSession#abort}.
+ */
+public interface Abandonable {
+    /**
+     * Called on the session's chat thread, or with the session manager locked; must not block.
+     *
+     * @param chatId chat of the abandoned session.
+     */
+    void abandon(long chatId);
+}
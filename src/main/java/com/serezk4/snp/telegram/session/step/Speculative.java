@@ -0,0 +1,33 @@
+package com.serezk4.snp.telegram.session.step;
+
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.telegram.bot.UpdateProxy;
+import com.serezk4.snp.telegram.session.SessionContext;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Command of a step flow whose result can be prepared before the user confirms it.
+ * <p>
+ * When the flow reaches a step marked {@link Step.Data#isSpeculate()}, the session asks the command
+ * for the work and runs it in the background at low priority. If the user confirms, the prepared
+ * artifact is passed to {@link #deliver}; if the speculation failed the session falls back to
+ * {@code execute}; if the session is cancelled the artifact is discarded.
+ */
+public interface Speculative {
+    /**
+     * Captures what the artifact needs on the session's thread; the returned work runs elsewhere and
+     * must not touch the context.
+     *
+     * @param context answers given so far.
+     * @param user    user of the session.
+     * @return work that renders the artifact.
+     */
+    Callable<File> speculate(SessionContext context, User user);
+
+    /**
+     * Finishes the command with an artifact prepared by {@link #speculate}, instead of {@code execute}.
+     */
+    void deliver(UpdateProxy update, SessionContext context, User user, File artifact);
+}
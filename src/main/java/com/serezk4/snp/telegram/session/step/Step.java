@@ -13,6 +13,8 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMar
 import org.telegram.telegrambots.meta.api.objects.webapp.WebAppInfo;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -50,6 +52,35 @@ public final class Step {
         @Builder.Default
         boolean requirePhoto = false;
 
+        /**
+         * Whether the photo answering this step is downloaded in the background as soon as it is
+         * accepted; the command picks it up with {@link SessionContext#takePrefetch}.
+         */
+        @Builder.Default
+        boolean prefetchPhoto = false;
+
+        /**
+         * Whether the command's result is prepared in the background while this step is shown, e.g. on
+         * a confirmation step; only honoured for commands implementing {@link Speculative}.
+         */
+        @Builder.Default
+        boolean speculate = false;
+
+        /**
+         * Returns the callbacks of the inline buttons. When a step has any, an answer to it is accepted
+         * only as a press of one of these buttons and {@link #inputPattern} is not consulted.
+         *
+         * @return callback action keys, empty if the step has no callback buttons.
+         */
+        public Set<String> getCallbacks() {
+            if (inlineButtons == null) return Set.of();
+
+            return inlineButtons.stream()
+                    .filter(button -> button.getLink() == null || button.getLink().isBlank())
+                    .map(Button.Inline::getCallback)
+                    .collect(Collectors.toUnmodifiableSet());
+        }
+
         public ReplyKeyboard transferButtons() {
             if (replyButtons != null && !replyButtons.isEmpty()) return transferReplyButtons();
             if (inlineButtons != null && !inlineButtons.isEmpty()) return transferInlineButtons();
@@ -1,12 +1,19 @@
 package com.serezk4.snp.telegram.session.step;
 
 import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.logging.LogMarkers;
 import com.serezk4.snp.telegram.bot.Client;
 import com.serezk4.snp.telegram.bot.UpdateProxy;
 import com.serezk4.snp.telegram.command.Command;
+import com.serezk4.snp.telegram.jfr.UpdateScope;
+import com.serezk4.snp.telegram.jfr.StepExecutedEvent;
 import com.serezk4.snp.telegram.session.Session;
 import com.serezk4.snp.telegram.session.SessionContext;
 import com.serezk4.snp.telegram.session.manager.StepManager;
+import com.serezk4.snp.telegram.util.DocumentUtil;
+import com.serezk4.snp.telegram.util.Keyboard;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.experimental.Accessors;
@@ -17,13 +24,23 @@ import org.telegram.telegrambots.meta.api.methods.ParseMode;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboard;
 
+import java.io.File;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 @Log4j2
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -31,18 +48,55 @@ import java.util.concurrent.ExecutionException;
 @Accessors(chain = true)
 public final class StepSession extends Session {
     public static final String EXIT_SESSION = "Отмена";
+    public static final String CANCEL_CALLBACK = "cancel";
+
+    /**
+     * Compiled input patterns; steps are declared in code, so the set of patterns is small.
+     */
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    /**
+     * Runs photo downloads, prefetches and commands' own; a cancelled download interrupts its thread,
+     * which aborts it.
+     */
+    private static final ExecutorService PREFETCH =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("prefetch-", 0).factory());
+
+    /**
+     * Runs speculations on a few minimum-priority platform threads, so rendering a result the user may
+     * never confirm does not compete with updates.
+     */
+    private static final ExecutorService SPECULATION = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 4),
+            Thread.ofPlatform().name("speculation-", 0).priority(Thread.MIN_PRIORITY).daemon(true).factory());
+
+    /**
+     * Speculations used on confirm, speculations that failed so the command ran anyway, and speculations
+     * thrown away on cancel; hits over hits plus waste is the ratio worth watching.
+     */
+    private static final Counter SPECULATION_HIT = Metrics.counter("bot.session.speculation", "outcome", "hit");
+    private static final Counter SPECULATION_MISS = Metrics.counter("bot.session.speculation", "outcome", "miss");
+    private static final Counter SPECULATION_WASTE = Metrics.counter("bot.session.speculation", "outcome", "waste");
 
     Deque<Step> steps;
+    int stepCount;
     Command<StepSession> command;
 
     @NonFinal
-    String currentValidationPattern = ".*";
+    State state = State.STARTED;
+
+    @NonFinal
+    Pattern currentValidationPattern = compile(".*");
+    @NonFinal
+    Set<String> currentCallbacks = Set.of();
     @NonFinal
     String currentValidationErrorText = "Неверный формат ввода. Попробуйте еще раз.";
     @NonFinal
     Step lastStep = null;
     @NonFinal
     boolean requirePhoto = false;
+    @NonFinal
+    boolean prefetchPhoto = false;
 
     public StepSession(List<Step> initialSteps, Command<StepSession> command, long chatId) {
         super(SessionContext.builder().chatId(chatId).build());
@@ -50,28 +104,103 @@ public final class StepSession extends Session {
         this.steps = new ArrayDeque<>() {{
             addAll(initialSteps);
         }};
+        this.stepCount = initialSteps.size();
         this.command = command;
     }
 
+    /**
+     * Outcome of the last processed update.
+     */
+    public enum State {
+        STARTED, ADVANCED, REJECTED, CANCELLED, COMPLETED
+    }
+
+    /**
+     * Returns the number of steps the user has already passed.
+     */
+    public int getStepIndex() {
+        return stepCount - steps.size();
+    }
+
     @Override
     public void next(Client client, UpdateProxy update, User user) {
+        final StepExecutedEvent event = new StepExecutedEvent();
+        event.begin();
+        try {
+            process(client, update, user);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.chatId = update.getChatId();
+                event.updateId = update.getUpdateId();
+                event.command = command.getUsage().getFirst();
+                event.step = getStepIndex();
+                event.state = state.name();
+                event.commit();
+            }
+        }
+    }
+
+    private void process(Client client, UpdateProxy update, User user) {
         recordUserInput(update);
 
-        if (update.getText() != null && isExitCommand(update.getText())) {
+        if (isExitCommand(update)) {
+            state = State.CANCELLED;
+            abort();
             sendExitMessage(client, update);
             destroy(client, update);
             return;
         }
 
         if (steps.isEmpty()) {
+            state = State.COMPLETED;
             destroy(client, update);
-            command.execute(update, getSessionContext(), user);
+            complete(update, user);
             return;
         }
 
+        if (update.isWebAppData() && getStepIndex() == 1 && command instanceof WebAppForm form) {
+            final List<WebAppForm.Answer> answers = form.answers(update.getText());
+            if (!answers.isEmpty()) {
+                fill(client, update, user, answers);
+                return;
+            }
+        }
+
         processNextStep(client, update, user);
     }
 
+    /**
+     * Answers several steps from a single update and replies once, with the step the answers lead to
+     * or with the first rejected one.
+     */
+    private void fill(Client client, UpdateProxy update, User user, List<WebAppForm.Answer> answers) {
+        // the submission itself is not an answer, the answers derived from it are
+        getSessionContext().getMessages().removeLast();
+
+        Step.Data data = null;
+        for (WebAppForm.Answer answer : answers) {
+            final UpdateProxy derived = update.withAnswer(answer.value(), answer.callback());
+            getSessionContext().getMessages().add(derived);
+
+            data = advance(client, derived, user);
+            if (state == State.REJECTED || steps.isEmpty()) break;
+        }
+
+        log.debug(LogMarkers.PER_UPDATE, "session {} filled from web app data, at step {}", getId(), getStepIndex());
+        sendOrUpdateMessage(client, update, data, user);
+    }
+
+    /**
+     * Drops the session's background work, prefetches and speculation, that nobody is going to use, and
+     * lets an {@link Abandonable} command release what it keeps for the session.
+     */
+    public void abort() {
+        getSessionContext().cancelPrefetches();
+        if (getSessionContext().discardSpeculation()) SPECULATION_WASTE.increment();
+        if (command instanceof Abandonable abandonable) abandonable.abandon(getSessionContext().getChatId());
+    }
+
     @Override
     public void destroy(Client client, UpdateProxy update) {
         if (!isSaveBotsMessages()) deleteBotMessages(client, update);
@@ -79,13 +208,37 @@ public final class StepSession extends Session {
         StepManager.getInstance().destroySession(update.getChatId());
     }
 
-    private boolean isExitCommand(String message) {
-        return message.equalsIgnoreCase(EXIT_SESSION) || message.contains("cancel");
+    /**
+     * Checks whether the update asks to cancel the current session: the cancel button, "Отмена" or
+     * {@code /cancel}.
+     */
+    public static boolean isExitCommand(UpdateProxy update) {
+        if (update.getCallbackData() != null) {
+            return Keyboard.Callback.actionOf(update.getCallbackData()).equals(CANCEL_CALLBACK);
+        }
+        return update.getText() != null
+                && (update.getText().equalsIgnoreCase(EXIT_SESSION) || update.getText().equals("/cancel"));
+    }
+
+    /**
+     * Checks the answer to the current step: a press of one of its buttons, looked up by action key,
+     * or text matching its input pattern.
+     */
+    private boolean isAccepted(UpdateProxy update) {
+        if (!currentCallbacks.isEmpty()) {
+            return update.getCallbackData() != null
+                    && currentCallbacks.contains(Keyboard.Callback.actionOf(update.getCallbackData()));
+        }
+        return update.getText() != null && currentValidationPattern.matcher(update.getText()).matches();
+    }
+
+    private static Pattern compile(String pattern) {
+        return PATTERNS.computeIfAbsent(pattern, Pattern::compile);
     }
 
     private void recordUserInput(UpdateProxy update) {
-        if (!update.getSelf().hasCallbackQuery()) getUsersMessagesIds().add(update.getMessageId());
-        getSessionContext().getMessages().add(update.getSelf());
+        if (update.getCallbackData() == null) getUsersMessagesIds().add(update.getMessageId());
+        getSessionContext().getMessages().add(update);
     }
 
     private void sendExitMessage(Client bot, UpdateProxy update) {
@@ -101,36 +254,112 @@ public final class StepSession extends Session {
     }
 
     private void processNextStep(Client bot, UpdateProxy update, User user) {
+        sendOrUpdateMessage(bot, update, advance(bot, update, user), user);
+    }
+
+    /**
+     * Checks the update against the current step and moves to the next one if it is accepted.
+     *
+     * @return the message to reply with: the next step, or the current one with the validation error.
+     */
+    private Step.Data advance(Client bot, UpdateProxy update, User user) {
         Step.Data data = steps.peek().getGenerator().apply(update, user, getSessionContext());
 
-        if (requirePhoto && !update.getSelf().getMessage().hasPhoto()) {
+        if (requirePhoto && update.getPhoto() == null) {
             data = Optional.ofNullable(lastStep)
                     .map(step -> step.getGenerator().apply(update, user, getSessionContext())).orElse(data);
             data.setText(data.getText().concat("\n\n<i>Необходимо прикрепить фото</i>"));
-            log.info("Validation failed! Expected photo, received: {}", update.getText());
+            log.debug(LogMarkers.PER_UPDATE, "Validation failed! Expected photo, received: {}", update.getText());
             getSessionContext().getMessages().removeLast();
-        } else if (!requirePhoto && (update.getText() == null || !update.getText().matches(currentValidationPattern))) {
+            state = State.REJECTED;
+        } else if (!requirePhoto && !isAccepted(update)) {
             data = Optional.ofNullable(lastStep)
                     .map(step -> step.getGenerator().apply(update, user, getSessionContext())).orElse(data);
             data.setText(data.getText().concat("\n\n<i>%s</i>".formatted(currentValidationErrorText)));
-            log.info("Validation failed! Expected: {}, received: {}",
-                    currentValidationPattern, update.getText());
+            log.debug(LogMarkers.PER_UPDATE, "Validation failed! Expected: {}, received: {}",
+                    currentCallbacks.isEmpty() ? currentValidationPattern : currentCallbacks, update.getText());
             getSessionContext().getMessages().removeLast();
+            state = State.REJECTED;
         } else {
-            log.info("validation passed! {} passed pattern {}", data.getInputPattern(), update.getText());
+            if (prefetchPhoto && update.getPhoto() != null) prefetch(bot, update);
 
-            this.currentValidationPattern = data.getInputPattern();
+            this.currentValidationPattern = compile(data.getInputPattern());
+            this.currentCallbacks = data.getCallbacks();
             this.currentValidationErrorText = data.getErrorMessage();
             this.requirePhoto = data.isRequirePhoto();
+            this.prefetchPhoto = data.isPrefetchPhoto();
 
-            log.info("%set validationPatter to {} to session {}", this.currentValidationPattern, getId());
-            log.info("%set validationErrorText to {} to session {}", this.currentValidationErrorText, getId());
-            log.info("%set requirePhoto to {} to session {}", this.requirePhoto, getId());
+            log.debug(LogMarkers.PER_UPDATE, "session {} expects pattern {}, callbacks {}, photo {}",
+                    getId(), currentValidationPattern, currentCallbacks, requirePhoto);
 
             lastStep = steps.pop();
+            state = State.ADVANCED;
+
+            if (data.isSpeculate() && command instanceof Speculative speculative) {
+                getSessionContext().speculate(SPECULATION.submit(speculative.speculate(getSessionContext(), user)));
+                log.debug(LogMarkers.PER_UPDATE, "session {} speculating", getId());
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * Runs the command, or delivers its speculated result if one is ready or in progress.
+     */
+    private void complete(UpdateProxy update, User user) {
+        final Future<File> speculation = getSessionContext().takeSpeculation();
+        if (speculation == null || !(command instanceof Speculative speculative)) {
+            command.execute(update, getSessionContext(), user);
+            return;
+        }
+
+        File artifact = null;
+        try {
+            artifact = speculation.get();
+        } catch (InterruptedException e) {
+            speculation.cancel(true);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | CancellationException e) {
+            log.debug("session {} speculation failed", getId(), e);
         }
 
-        sendOrUpdateMessage(bot, update, data, user);
+        if (artifact == null) {
+            SPECULATION_MISS.increment();
+            command.execute(update, getSessionContext(), user);
+            return;
+        }
+
+        SPECULATION_HIT.increment();
+        speculative.deliver(update, getSessionContext(), user, artifact);
+    }
+
+    /**
+     * Starts downloading the accepted photo to where the command expects it, so the download is not
+     * on the path of the final reply.
+     */
+    private void prefetch(Client client, UpdateProxy update) {
+        final PhotoSize photo = update.getPhoto();
+        getSessionContext().prefetch(photo.getFileId(),
+                download(client, photo, update.getChatId(), update.getUpdateId()));
+        log.debug(LogMarkers.PER_UPDATE, "session {} prefetching photo {}", getId(), photo.getFileId());
+    }
+
+    /**
+     * Downloads the photo to where commands expect it on the prefetch executor; cancelling the returned
+     * future with interruption aborts the download.
+     */
+    public static Future<File> download(Client client, PhotoSize photo, long chatId, int updateId) {
+        final String path = DocumentUtil.PHOTO_PATH.formatted(photo.getFileId());
+        return PREFETCH.submit(() -> {
+            UpdateScope.enter(chatId, updateId);
+            try {
+                return client.downloadFile(photo, path);
+            } finally {
+                UpdateScope.exit();
+            }
+        });
     }
 
     private void sendOrUpdateMessage(Client bot, UpdateProxy update, Step.Data data, User user) {
@@ -143,7 +372,7 @@ public final class StepSession extends Session {
                 if (!isSaveUsersMessages()) deleteUserMessages(bot, update);
                 return;
             } catch (Exception ignored) {
-                log.info("Failed to edit message, sending new message");
+                log.debug(LogMarkers.PER_UPDATE, "Failed to edit message, sending new message");
             }
         }
 
@@ -172,9 +401,8 @@ public final class StepSession extends Session {
 
     private void cleanupOldBotMessages(Client client, UpdateProxy update) {
         if (isSaveBotsMessages()) return;
-        log.info(getBotsMessagesIds());
         while (getBotsMessagesIds().size() > 1) {
-            log.info("Deletion message with id {}", getBotsMessagesIds().getFirst());
+            log.debug(LogMarkers.PER_UPDATE, "Deletion message with id {}", getBotsMessagesIds().getFirst());
             client.executeAsync(DeleteMessage.builder()
                     .chatId(update.getChatId())
                     .messageId(getBotsMessagesIds().removeFirst())
@@ -188,11 +416,11 @@ public final class StepSession extends Session {
         Deque<Integer> botsMessagesIds = getBotsMessagesIds();
         while (!botsMessagesIds.isEmpty()) {
             Integer msgId = botsMessagesIds.removeFirst();
-            log.info("Deleting bot message with id {}", msgId);
+            log.debug(LogMarkers.PER_UPDATE, "Deleting bot message with id {}", msgId);
             client.executeAsync(DeleteMessage.builder()
                             .chatId(update.getChatId()).messageId(msgId)
                             .build())
-                    .thenAccept(_ -> log.info("Deleted bot message with id {}", msgId));
+                    .thenAccept(_ -> log.debug(LogMarkers.PER_UPDATE, "Deleted bot message with id {}", msgId));
         }
     }
 
@@ -0,0 +1,36 @@
+package com.serezk4.snp.telegram.session.step;
+
+import java.util.List;
+
+/**
+ * Command of a step flow that can also be filled in one go from a Telegram Mini App.
+ * <p>
+ * The submission is turned into answers to the flow's leading steps, which the session checks with
+ * the steps' own validators, exactly as if the user had sent them one by one. The first rejected
+ * answer stops the fill and the flow continues step by step from there.
+ */
+public interface WebAppForm {
+    /**
+     * Converts a Mini App submission into answers, in step order, starting with the first question.
+     *
+     * @param payload {@code web_app_data} sent by the Mini App.
+     * @return answers, empty if the payload is not a submission of this form.
+     */
+    List<Answer> answers(String payload);
+
+    /**
+     * Answer to one step.
+     *
+     * @param value    text or callback action.
+     * @param callback whether the step is answered with a button.
+     */
+    record Answer(String value, boolean callback) {
+        public static Answer text(final String value) {
+            return new Answer(value, false);
+        }
+
+        public static Answer callback(final String value) {
+            return new Answer(value, true);
+        }
+    }
+}
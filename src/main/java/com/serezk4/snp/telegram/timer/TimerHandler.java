@@ -0,0 +1,18 @@
+package com.serezk4.snp.telegram.timer;
+
+/**
+ * Runs timers of one kind. Implementations are beans; a timer runs as a task of its chat in the
+ * {@link com.serezk4.snp.telegram.bot.Router}, ordered with the chat's updates.
+ */
+public interface TimerHandler {
+    /**
+     * @return kind of timers this handler runs, at most 64 characters.
+     */
+    String kind();
+
+    /**
+     * @param chatId  chat the timer belongs to.
+     * @param payload value given when the timer was scheduled, may be {@code null}.
+     */
+    void fire(long chatId, String payload);
+}
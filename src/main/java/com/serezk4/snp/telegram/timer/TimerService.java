@@ -0,0 +1,282 @@
+package com.serezk4.snp.telegram.timer;
+
+import com.serezk4.snp.database.repository.TimerRepository;
+import com.serezk4.snp.telegram.bot.Router;
+import com.serezk4.snp.telegram.cluster.ClusterCoordinator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delayed per-chat tasks: reminders, follow-ups, delayed messages.
+ * <p>
+ * A chat has at most one timer of a kind; scheduling it again moves it. Timers are stored in
+ * {@code timers} and kept in a {@link TimingWheel} of {@code telegram.timers.tick} ms ticks, so
+ * scheduling and cancelling cost O(1) no matter how many timers are pending. A sweep loads timers
+ * that come due within two sweep intervals, which restores them after a restart and picks up chats
+ * taken over from another instance.
+ * <p>
+ * {@link #schedule} and {@link #cancel} return at once: the row and the wheel are updated afterwards
+ * on a single writer thread, in call order, so a timer scheduled on an update's thread does not make
+ * the update wait for the database. A write that fails is logged and the timer is lost, like one whose
+ * handler fails.
+ * <p>
+ * An expired timer runs as a task of its chat in the {@link Router}, after deleting its row: a timer
+ * runs at most once across instances, and is lost if its handler fails.
+ */
+@Component
+@Log4j2
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class TimerService {
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_LEVELS = 4;
+    private static final int SWEEP_PAGE_SIZE = 1000;
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(5);
+
+    TimerRepository timerRepository;
+    Router router;
+    ClusterCoordinator clusterCoordinator;
+    Map<String, TimerHandler> handlers;
+    long tick;
+    long sweepInterval;
+
+    /**
+     * Wall-clock millis of tick {@code 0}.
+     */
+    long origin = System.currentTimeMillis();
+    TimingWheel<Timer> wheel = new TimingWheel<>(WHEEL_BITS, WHEEL_LEVELS, 0);
+    Map<Key, TimingWheel.Node<Timer>> pending = new HashMap<>();
+
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        final Thread thread = new Thread(runnable, "timers");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Applies schedules and cancels in call order; one thread, so a cancel never overtakes its schedule.
+     */
+    ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "timer-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    Counter fired;
+    io.micrometer.core.instrument.Timer lateness;
+
+    public TimerService(
+            final TimerRepository timerRepository,
+            final Router router,
+            final ClusterCoordinator clusterCoordinator,
+            final List<TimerHandler> handlers,
+            final MeterRegistry meterRegistry,
+            final @Value("${telegram.timers.tick:100}") long tick,
+            final @Value("${telegram.timers.sweep-interval:60000}") long sweepInterval
+    ) {
+        if (tick < 1 || sweepInterval < tick) throw new IllegalArgumentException("invalid timer intervals");
+
+        this.timerRepository = timerRepository;
+        this.router = router;
+        this.clusterCoordinator = clusterCoordinator;
+        this.handlers = handlers.stream().collect(Collectors.toMap(TimerHandler::kind, Function.identity()));
+        this.tick = tick;
+        this.sweepInterval = sweepInterval;
+
+        this.fired = meterRegistry.counter("bot.timers.fired");
+        this.lateness = io.micrometer.core.instrument.Timer.builder("bot.timers.lateness").register(meterRegistry);
+        Gauge.builder("bot.timers.pending", this, TimerService::size).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::advance, tick, tick, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::sweep, 0, sweepInterval, TimeUnit.MILLISECONDS);
+        log.info("timers started, tick {} ms, handlers {}", tick, handlers.keySet());
+    }
+
+    /**
+     * Stops the wheel and lets the queued writes finish, so timers scheduled just before shutdown are
+     * not lost.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        writer.shutdown();
+        if (!writer.awaitTermination(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("timer writes did not finish within {}", STOP_TIMEOUT);
+        }
+    }
+
+    /**
+     * Schedules the chat's timer of the kind, replacing a pending one.
+     *
+     * @param chatId  chat the timer runs in.
+     * @param kind    kind of a {@link TimerHandler} bean.
+     * @param payload value passed to the handler, may be {@code null}.
+     * @param delay   time until the timer runs.
+     */
+    public void schedule(final long chatId, final String kind, final String payload, final Duration delay) {
+        if (!handlers.containsKey(kind)) throw new IllegalArgumentException("no timer handler for " + kind);
+
+        final Instant dueAt = Instant.now().plus(delay).truncatedTo(ChronoUnit.MILLIS);
+        write(chatId, kind, () -> {
+            final long id = timerRepository.upsert(chatId, kind, payload, dueAt);
+            add(new Timer(id, chatId, kind, payload, dueAt), true);
+        });
+    }
+
+    /**
+     * Cancels the chat's timer of the kind, if any.
+     */
+    public void cancel(final long chatId, final String kind) {
+        // unscheduled right away, so it cannot fire meanwhile, and again after a schedule still queued
+        unschedule(chatId, kind);
+        write(chatId, kind, () -> {
+            unschedule(chatId, kind);
+            timerRepository.delete(chatId, kind);
+        });
+    }
+
+    public synchronized int size() {
+        return wheel.size();
+    }
+
+    private synchronized void unschedule(final long chatId, final String kind) {
+        final TimingWheel.Node<Timer> node = pending.remove(new Key(chatId, kind));
+        if (node != null) wheel.cancel(node);
+    }
+
+    private void write(final long chatId, final String kind, final Runnable task) {
+        try {
+            writer.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("failed to update timer {} of chat {}: {}", kind, chatId, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("timer {} of chat {} not updated, shutting down", kind, chatId);
+        }
+    }
+
+    /**
+     * @param replace whether to replace a pending timer of the same chat and kind; the sweep does not,
+     *                since what it read may already be outdated by a {@link #schedule}.
+     */
+    private synchronized void add(final Timer timer, final boolean replace) {
+        final Key key = new Key(timer.chatId(), timer.kind());
+        final TimingWheel.Node<Timer> current = pending.get(key);
+        if (current != null) {
+            if (!replace) return;
+            wheel.cancel(current);
+        }
+
+        pending.put(key, wheel.add(tickOf(timer.dueAt()), timer));
+    }
+
+    private long tickOf(final Instant instant) {
+        return tickOf(instant.toEpochMilli(), origin, tick);
+    }
+
+    /**
+     * @return the first tick at or after {@code epochMilli}; rounded up, so a timer never runs early.
+     */
+    static long tickOf(final long epochMilli, final long origin, final long tick) {
+        return Math.ceilDiv(epochMilli - origin, tick);
+    }
+
+    private void advance() {
+        final List<Timer> expired = new ArrayList<>();
+
+        synchronized (this) {
+            wheel.advance((System.currentTimeMillis() - origin) / tick, timer -> {
+                expired.add(timer);
+                pending.remove(new Key(timer.chatId(), timer.kind()));
+            });
+        }
+
+        // dispatched outside the lock: routing may block on a busy chat map, the wheel must not
+        expired.forEach(this::dispatch);
+    }
+
+    private void dispatch(final Timer timer) {
+        // the chat moved to another instance, which finds the row with its next sweep
+        if (!clusterCoordinator.ownsChat(timer.chatId())) return;
+
+        try {
+            router.push(timer.chatId(), () -> fire(timer));
+        } catch (IllegalStateException e) {
+            log.debug("timer {} not routed: {}", timer.id(), e.getMessage());
+        }
+    }
+
+    private void fire(final Timer timer) {
+        // lost the row to another instance, or the timer was moved or cancelled meanwhile
+        if (!timerRepository.claim(timer.id(), timer.dueAt())) return;
+
+        fired.increment();
+        lateness.record(Duration.between(timer.dueAt(), Instant.now()));
+
+        final TimerHandler handler = handlers.get(timer.kind());
+        if (handler == null) {
+            log.warn("no handler for timer {} of kind {}, dropped", timer.id(), timer.kind());
+            return;
+        }
+        handler.fire(timer.chatId(), timer.payload());
+    }
+
+    private void sweep() {
+        try {
+            final Instant horizon = Instant.now().plusMillis(sweepInterval * 2);
+            long afterId = 0;
+            int loaded = 0;
+
+            while (true) {
+                final List<TimerRepository.Row> page = timerRepository.findDue(horizon, afterId, SWEEP_PAGE_SIZE);
+                for (TimerRepository.Row row : page) {
+                    if (!clusterCoordinator.ownsChat(row.chatId())) continue;
+                    add(new Timer(row.id(), row.chatId(), row.kind(), row.payload(), row.dueAt()), false);
+                    loaded++;
+                }
+
+                if (page.size() < SWEEP_PAGE_SIZE) break;
+                afterId = page.getLast().id();
+            }
+
+            log.debug("timer sweep: {} due before {}, {} pending", loaded, horizon, size());
+        } catch (Exception e) {
+            log.warn("timer sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private record Timer(long id, long chatId, String kind, String payload, Instant dueAt) {
+    }
+
+    private record Key(long chatId, String kind) {
+    }
+}
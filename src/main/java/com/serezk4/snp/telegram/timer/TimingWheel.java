@@ -0,0 +1,164 @@
+package com.serezk4.snp.telegram.timer;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel after Varghese and Lauck: {@code levels} wheels of {@code 2^bits} slots,
+ * a slot of level {@code l} spanning {@code 2^(bits * l)} ticks.
+ * <p>
+ * An entry goes to the lowest level whose range covers its deadline, into a doubly linked slot list,
+ * so adding and cancelling are O(1). Whenever the lower bits of the current tick wrap, the matching
+ * slot of the next level is cascaded down, and the level 0 slot of the tick expires. Deadlines past
+ * the top level wait in an overflow list that is re-placed when the top level wraps.
+ * <p>
+ * Not thread-safe.
+ */
+final class TimingWheel<T> {
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final Node<T>[][] slots;
+    private final Node<T> overflow = Node.sentinel();
+
+    private long now;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(final int bits, final int levels, final long startTick) {
+        if (bits < 1 || levels < 1 || bits * levels > 62) throw new IllegalArgumentException("invalid wheel shape");
+
+        this.bits = bits;
+        this.mask = (1 << bits) - 1;
+        this.levels = levels;
+        this.now = startTick;
+        this.slots = new Node[levels][1 << bits];
+
+        for (Node<T>[] level : slots) {
+            for (int i = 0; i < level.length; i++) level[i] = Node.sentinel();
+        }
+    }
+
+    /**
+     * Schedules a value; a deadline that already passed expires on the next tick.
+     *
+     * @return handle to {@link #cancel} the entry with.
+     */
+    Node<T> add(final long deadline, final T value) {
+        final Node<T> node = new Node<>(Math.max(deadline, now + 1), value);
+        place(node);
+        size++;
+        return node;
+    }
+
+    /**
+     * @return {@code true} if the entry was pending, {@code false} if it expired or was cancelled before.
+     */
+    boolean cancel(final Node<T> node) {
+        if (!node.isLinked()) return false;
+
+        node.unlink();
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel to {@code tick}, passing every entry that expires on the way to {@code expired}.
+     */
+    void advance(final long tick, final Consumer<T> expired) {
+        while (now < tick) {
+            now++;
+            cascade();
+
+            final Node<T> slot = slots[0][(int) (now & mask)];
+            while (slot.next != slot) {
+                final Node<T> node = slot.next;
+                node.unlink();
+                size--;
+                expired.accept(node.value);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long now() {
+        return now;
+    }
+
+    private void cascade() {
+        for (int level = 1; level <= levels; level++) {
+            final int shift = bits * level;
+            if ((now & ((1L << shift) - 1)) != 0) return;
+
+            final Node<T> slot = level == levels ? overflow : slots[level][(int) ((now >> shift) & mask)];
+            if (slot.next == slot) continue;
+
+            // detached first: entries of the overflow list may be placed back into it
+            Node<T> node = slot.next;
+            slot.prev.next = null;
+            slot.prev = slot;
+            slot.next = slot;
+
+            while (node != null) {
+                final Node<T> next = node.next;
+                place(node);
+                node = next;
+            }
+        }
+    }
+
+    private void place(final Node<T> node) {
+        final long delta = node.deadline - now;
+
+        for (int level = 0; level < levels; level++) {
+            if (delta < 1L << (bits * (level + 1))) {
+                slots[level][(int) ((node.deadline >> (bits * level)) & mask)].append(node);
+                return;
+            }
+        }
+        overflow.append(node);
+    }
+
+    static final class Node<T> {
+        private final long deadline;
+        private final T value;
+        private Node<T> prev;
+        private Node<T> next;
+
+        private Node(final long deadline, final T value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+
+        private static <T> Node<T> sentinel() {
+            final Node<T> sentinel = new Node<>(0, null);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            return sentinel;
+        }
+
+        T value() {
+            return value;
+        }
+
+        private boolean isLinked() {
+            return prev != null;
+        }
+
+        private void append(final Node<T> node) {
+            node.prev = prev;
+            node.next = this;
+            prev.next = node;
+            prev = node;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+}
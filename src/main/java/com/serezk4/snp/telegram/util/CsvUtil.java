@@ -0,0 +1,90 @@
+package com.serezk4.snp.telegram.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 helpers for the admin CSV exports and imports.
+ */
+public final class CsvUtil {
+    public static final char SEPARATOR = ',';
+
+    private CsvUtil() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Appends a field, quoting it only when it contains a separator, a quote or a line break.
+     *
+     * @param builder target.
+     * @param value   field value, {@code null} is written as an empty field.
+     * @return the builder.
+     */
+    public static StringBuilder appendField(final StringBuilder builder, final String value) {
+        if (value == null) return builder;
+
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c == SEPARATOR || c == '"' || c == '\n' || c == '\r';
+        }
+
+        if (!quote) return builder.append(value);
+
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"') builder.append('"');
+            builder.append(c);
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * Reads the next record. Quoted fields may contain separators, doubled quotes and line breaks;
+     * records end with {@code \n} or {@code \r\n}.
+     *
+     * @param reader source positioned at the start of a record; buffering is up to the caller.
+     * @return field values, empty fields as empty strings, or {@code null} at the end of input.
+     * @throws IOException if reading fails or the input ends inside a quoted field.
+     */
+    public static List<String> readRecord(final Reader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) return null;
+
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) throw new IOException("unterminated quoted field");
+                if (c != '"') {
+                    field.append((char) c);
+                } else {
+                    c = reader.read();
+                    if (c == '"') field.append('"');
+                    else {
+                        quoted = false;
+                        continue;
+                    }
+                }
+            } else if (c == -1 || c == '\n') {
+                break;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+}
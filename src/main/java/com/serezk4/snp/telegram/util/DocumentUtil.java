@@ -1,15 +1,20 @@
 package com.serezk4.snp.telegram.util;
 
+import com.serezk4.snp.telegram.bot.Router;
+import com.serezk4.snp.telegram.jfr.DocumentRenderedEvent;
+import com.serezk4.snp.telegram.jfr.UpdateScope;
 import lombok.SneakyThrows;
 import org.apache.poi.util.Units;
 import org.apache.poi.xwpf.usermodel.*;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 
 public class DocumentUtil {
+    public static final String PHOTO_PATH = "./downloads/%s.jpg";
 
-    @SneakyThrows
     public static void generateDocument(
             final String fullName,
             final String birthDate,
@@ -17,6 +22,78 @@ public class DocumentUtil {
             final String photoPath,
             final String outputPath
     ) {
+        generateDocument(fullName, birthDate, gender, photoPath, outputPath, Router.Preemption.NONE);
+    }
+
+    /**
+     * Renders the document into a file, stopping if the task is preempted before the photo is loaded or
+     * before the document is written.
+     *
+     * @return {@code false} if preempted; the partial output is deleted.
+     */
+    @SneakyThrows
+    public static boolean generateDocument(
+            final String fullName,
+            final String birthDate,
+            final String gender,
+            final String photoPath,
+            final String outputPath,
+            final Router.Preemption preemption
+    ) {
+        final boolean rendered;
+        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
+            rendered = generateDocument(fullName, birthDate, gender, photoPath, fos, preemption);
+        }
+
+        if (!rendered) Files.deleteIfExists(Path.of(outputPath));
+        return rendered;
+    }
+
+    public static void generateDocument(
+            final String fullName,
+            final String birthDate,
+            final String gender,
+            final String photoPath,
+            final OutputStream outputStream
+    ) {
+        generateDocument(fullName, birthDate, gender, photoPath, outputStream, Router.Preemption.NONE);
+    }
+
+    /**
+     * @return {@code false} if preempted, with nothing written to the stream.
+     */
+    @SneakyThrows
+    public static boolean generateDocument(
+            final String fullName,
+            final String birthDate,
+            final String gender,
+            final String photoPath,
+            final OutputStream outputStream,
+            final Router.Preemption preemption
+    ) {
+        final DocumentRenderedEvent event = new DocumentRenderedEvent();
+        event.begin();
+        try {
+            return render(fullName, birthDate, gender, photoPath, outputStream, preemption);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.chatId = UpdateScope.chatId();
+                event.updateId = UpdateScope.updateId();
+                event.withPhoto = photoPath != null && !photoPath.isEmpty();
+                event.commit();
+            }
+        }
+    }
+
+    private static boolean render(
+            final String fullName,
+            final String birthDate,
+            final String gender,
+            final String photoPath,
+            final OutputStream outputStream,
+            final Router.Preemption preemption
+    ) throws IOException {
         XWPFDocument document = new XWPFDocument();
 
         XWPFParagraph title = document.createParagraph();
@@ -42,6 +119,11 @@ public class DocumentUtil {
         addParagraph(document,
                 "4. Настоящий договор вступает в силу с момента подписания.");
 
+        if (preemption.yieldIfRequested()) {
+            document.close();
+            return false;
+        }
+
         if (photoPath != null && !photoPath.isEmpty()) {
             File imageFile = new File(photoPath);
             if (imageFile.exists()) {
@@ -64,10 +146,14 @@ public class DocumentUtil {
         addParagraph(document, "Подпись: ".concat(fullName));
         addParagraph(document, "Дата подписания: ".concat(LocalDate.now().toString()));
 
-        FileOutputStream fos = new FileOutputStream(outputPath);
-        document.write(fos);
-        fos.close();
+        if (preemption.yieldIfRequested()) {
+            document.close();
+            return false;
+        }
+
+        document.write(outputStream);
         document.close();
+        return true;
     }
 
     private static void addParagraph(XWPFDocument document, String text) {
@@ -0,0 +1,63 @@
+package com.serezk4.snp.telegram.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads form submissions of Telegram Mini Apps ({@code web_app_data}), flat JSON objects of at most
+ * 4096 bytes.
+ */
+public final class FormUtil {
+    /**
+     * Telegram's limit for {@code web_app_data}.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = 4096;
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .streamReadConstraints(StreamReadConstraints.builder()
+                    .maxNestingDepth(8)
+                    .maxStringLength(MAX_PAYLOAD_LENGTH)
+                    .build())
+            .build();
+
+    private FormUtil() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    /**
+     * Picks the given fields out of a submission in one pass over the tokens, without building a tree;
+     * other fields and nested values are skipped.
+     *
+     * @param payload submission.
+     * @param fields  fields to read, all scalars.
+     * @return values of the fields present, as text; empty if the payload is not a JSON object.
+     */
+    public static Map<String, String> parse(final String payload, final List<String> fields) {
+        if (payload == null || payload.length() > MAX_PAYLOAD_LENGTH) return Map.of();
+
+        final Map<String, String> values = new HashMap<>(fields.size());
+        try (JsonParser parser = FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return Map.of();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.currentName();
+                final JsonToken value = parser.nextToken();
+
+                if (value.isStructStart()) parser.skipChildren();
+                else if (value.isScalarValue() && value != JsonToken.VALUE_NULL && fields.contains(field)) {
+                    values.put(field, parser.getText());
+                }
+            }
+        } catch (IOException e) {
+            return Map.of();
+        }
+        return values;
+    }
+}
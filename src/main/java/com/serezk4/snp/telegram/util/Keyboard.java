@@ -3,6 +3,7 @@ package com.serezk4.snp.telegram.util;
 import com.serezk4.snp.database.model.User;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
@@ -14,8 +15,10 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.Keyboard
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.KeyboardRow;
 import org.telegram.telegrambots.meta.api.objects.webapp.WebAppInfo;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -28,9 +31,11 @@ import java.util.stream.IntStream;
  * - WebApp buttons support.
  * - Customizable layouts for buttons.
  * - Static keyboards for frequent use cases.
+ * - Resizable layouts are memoized by their buttons, so a step shown again reuses its markup.
  */
 @Log4j2
 public class Keyboard {
+    private static final int MAX_CACHED_LAYOUTS = 1024;
 
     private Keyboard() {
         throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
@@ -44,6 +49,63 @@ public class Keyboard {
         public static final String DATA = "*";
     }
 
+    /**
+     * Compact callback data: an action key, optionally followed by arguments separated by
+     * {@link Delimiter#DATA}. Telegram rejects callback data longer than {@value #MAX_BYTES} bytes.
+     */
+    public static final class Callback {
+        public static final int MAX_BYTES = 64;
+
+        private Callback() {
+            throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+        }
+
+        /**
+         * Encodes callback data.
+         *
+         * @param action action key.
+         * @param args   optional arguments.
+         * @return callback data.
+         * @throws IllegalArgumentException if the data exceeds {@value #MAX_BYTES} bytes.
+         */
+        public static String of(String action, String... args) {
+            final String data = args.length == 0
+                    ? action
+                    : String.join(Delimiter.DATA, action, String.join(Delimiter.DATA, args));
+
+            if (data.getBytes(StandardCharsets.UTF_8).length > MAX_BYTES) {
+                throw new IllegalArgumentException("callback data exceeds %d bytes: %s".formatted(MAX_BYTES, data));
+            }
+            return data;
+        }
+
+        /**
+         * Extracts the action key from callback data.
+         *
+         * @param data callback data.
+         * @return action key.
+         */
+        public static String actionOf(String data) {
+            final int end = data.indexOf(Delimiter.DATA);
+            return end < 0 ? data : data.substring(0, end);
+        }
+    }
+
+    /**
+     * Returns the cached markup of a layout, building it on the first request.
+     * The cache is dropped entirely once it holds {@value #MAX_CACHED_LAYOUTS} layouts.
+     */
+    private static <K, V> V memoize(Map<K, V> cache, K layout, Supplier<V> factory) {
+        final V cached = cache.get(layout);
+        if (cached != null) return cached;
+
+        if (cache.size() >= MAX_CACHED_LAYOUTS) cache.clear();
+        return cache.computeIfAbsent(layout, _ -> factory.get());
+    }
+
+    private record Layout<B>(List<B> buttons, int rowSize) {
+    }
+
     /**
      * Predefined actions available for keyboard buttons.
      */
@@ -65,6 +127,8 @@ public class Keyboard {
     public static class Reply {
         public static final ReplyKeyboardMarkup DEFAULT = getDefault();
 
+        private static final Map<Layout<Button>, ReplyKeyboardMarkup> LAYOUTS = new ConcurrentHashMap<>();
+
         /**
          * Generates the default reply keyboard with predefined buttons.
          *
@@ -139,13 +203,19 @@ public class Keyboard {
         }
 
         /**
-         * Generates a reply keyboard with customizable row size.
+         * Generates a reply keyboard with customizable row size. The markup is shared between callers
+         * asking for the same layout and must not be modified.
          *
          * @param buttons list of {@link Button} objects.
          * @param rowSize number of buttons per row.
          * @return {@link ReplyKeyboardMarkup} resizable keyboard.
          */
         public static ReplyKeyboardMarkup getResizableKeyboard(List<Button> buttons, int rowSize) {
+            final Layout<Button> layout = new Layout<>(Collections.unmodifiableList(new ArrayList<>(buttons)), rowSize);
+            return memoize(LAYOUTS, layout, () -> buildResizableKeyboard(layout.buttons(), rowSize));
+        }
+
+        private static ReplyKeyboardMarkup buildResizableKeyboard(List<Button> buttons, int rowSize) {
             List<KeyboardRow> mainRow = new ArrayList<>();
             Queue<Button> buttonsQueue = new LinkedList<>(buttons);
 
@@ -208,6 +278,7 @@ public class Keyboard {
         @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
         @Getter
         @AllArgsConstructor
+        @EqualsAndHashCode
         public static class Button {
             String text;
             WebAppInfo webAppInfo;
@@ -223,6 +294,7 @@ public class Keyboard {
      * These are the keyboards that appear in messages with buttons that trigger bot callbacks.
      */
     public static class Inline {
+        private static final Map<Layout<Button>, InlineKeyboardMarkup> LAYOUTS = new ConcurrentHashMap<>();
 
         /**
          * Generates a static inline keyboard with predefined buttons.
@@ -242,13 +314,20 @@ public class Keyboard {
         }
 
         /**
-         * Generates a resizable inline keyboard with customizable row size.
+         * Generates a resizable inline keyboard with customizable row size. The markup is shared between
+         * callers asking for the same layout and must not be modified.
          *
          * @param buttonsData list of {@link Button} objects.
          * @param rowSize     number of buttons per row.
          * @return {@link InlineKeyboardMarkup} resizable inline keyboard.
          */
         public static InlineKeyboardMarkup getResizableKeyboard(List<Button> buttonsData, int rowSize) {
+            final Layout<Button> layout = new Layout<>(
+                    Collections.unmodifiableList(new ArrayList<>(buttonsData)), rowSize);
+            return memoize(LAYOUTS, layout, () -> buildResizableKeyboard(layout.buttons(), rowSize));
+        }
+
+        private static InlineKeyboardMarkup buildResizableKeyboard(List<Button> buttonsData, int rowSize) {
             List<InlineKeyboardRow> rows = new ArrayList<>();
             Deque<Button> buttonsQueue = new LinkedList<>(buttonsData);
 
@@ -291,19 +370,25 @@ public class Keyboard {
          * Helper method to create an {@link InlineKeyboardButton} with a callback data string.
          *
          * @param text         button text.
-         * @param callbackData callback data.
-         * @param id           unique button identifier.
+         * @param callbackData callback data, see {@link Callback}.
          * @return {@link InlineKeyboardButton} created inline button.
          */
-        private static InlineKeyboardButton getButton(String text, String callbackData, long id) {
+        private static InlineKeyboardButton getButton(String text, String callbackData) {
             InlineKeyboardButton tempInlineButton = new InlineKeyboardButton(text);
-            tempInlineButton.setCallbackData(String.join(Delimiter.SERVICE, String.valueOf(id), callbackData));
+            tempInlineButton.setCallbackData(Callback.of(callbackData));
             return tempInlineButton;
         }
 
-        private static InlineKeyboardButton getButton(String text, String callbackData, String url, long id) {
+        /**
+         * Helper method to create an {@link InlineKeyboardButton} that opens a link.
+         * Telegram accepts exactly one action per button, so no callback data is set.
+         *
+         * @param text button text.
+         * @param url  link to open.
+         * @return {@link InlineKeyboardButton} created inline button.
+         */
+        private static InlineKeyboardButton getLinkButton(String text, String url) {
             InlineKeyboardButton tempInlineButton = new InlineKeyboardButton(text);
-            tempInlineButton.setCallbackData(String.join(Delimiter.SERVICE, String.valueOf(id), callbackData));
             tempInlineButton.setUrl(url);
             return tempInlineButton;
         }
@@ -316,8 +401,8 @@ public class Keyboard {
          */
         private static InlineKeyboardButton getButton(Button button) {
             return button.getLink() != null && !button.getLink().isBlank() ?
-                    getButton(button.getText(), button.getCallback(), button.getLink(), button.getId()) :
-                    getButton(button.getText(), String.join(Delimiter.SERVICE, button.getCallback()), button.getId());
+                    getLinkButton(button.getText(), button.getLink()) :
+                    getButton(button.getText(), button.getCallback());
         }
 
         /**
@@ -325,24 +410,25 @@ public class Keyboard {
          *
          * @param text       button text.
          * @param webAppInfo associated {@link WebAppInfo}.
-         * @param id         unique button identifier.
          * @return {@link InlineKeyboardButton} created inline button.
          */
-        private static InlineKeyboardButton getButton(String text, WebAppInfo webAppInfo, long id) {
+        private static InlineKeyboardButton getButton(String text, WebAppInfo webAppInfo) {
             InlineKeyboardButton tempInlineButton = new InlineKeyboardButton(text);
             tempInlineButton.setWebApp(webAppInfo);
             return tempInlineButton;
         }
 
+        /**
+         * Inline button. Its callback data is the {@code callback} itself, so identical buttons
+         * produce identical markup.
+         */
         @Getter
+        @EqualsAndHashCode
         @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
         public static class Button {
-            private static final AtomicInteger ID_GENERATOR = new AtomicInteger(0);
-
             String text;
             String callback;
             String link;
-            long id = ID_GENERATOR.incrementAndGet();
 
             public Button(String text, String callback, String link) {
                 this.text = text;
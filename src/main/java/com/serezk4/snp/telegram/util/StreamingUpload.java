@@ -0,0 +1,139 @@
+package com.serezk4.snp.telegram.util;
+
+import com.serezk4.snp.telegram.bot.Client;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Uploads a document whose content is produced on the fly.
+ * <p>
+ * The writer runs on its own virtual thread and feeds a pipe that the HTTP client reads, whether it
+ * does so while building the request or while sending it, so the document is never materialized on
+ * disk as a whole. Once the upload completes the read side is closed, so a writer blocked on a full
+ * pipe of a failed upload gets an error instead of waiting forever.
+ */
+public final class StreamingUpload {
+    private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+    private static final Duration UPLOAD_TIMEOUT = Duration.ofMinutes(10);
+
+    private static final ExecutorService WRITERS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("upload-writer-", 0).factory());
+
+    private StreamingUpload() {
+        throw new UnsupportedOperationException("This is a utility class and cannot be instantiated");
+    }
+
+    @FunctionalInterface
+    public interface Writer<T> {
+        T write(OutputStream outputStream) throws Exception;
+    }
+
+    /**
+     * Streams the writer's output to the chat as a document and waits until Telegram accepts it.
+     *
+     * @param client   telegram client.
+     * @param chatId   recipient chat.
+     * @param fileName name of the uploaded document.
+     * @param caption  document caption.
+     * @param writer   producer of the document content.
+     * @return the value returned by the writer.
+     * @throws IOException if the content could not be produced, or the upload was rejected or timed out.
+     */
+    public static <T> T upload(
+            final Client client,
+            final long chatId,
+            final String fileName,
+            final String caption,
+            final Writer<T> writer
+    ) throws IOException, InterruptedException {
+        final PipedInputStream in = new PipedInputStream(PIPE_BUFFER_SIZE);
+        final PipedOutputStream out = new PipedOutputStream(in);
+
+        final CompletableFuture<T> produced = new CompletableFuture<>();
+        WRITERS.execute(() -> {
+            try {
+                final T result = writer.write(out);
+                out.close();
+                produced.complete(result);
+            } catch (Throwable e) {
+                // completed before closing the pipe, so the upload failing on it is attributed to the writer;
+                // closing the read side first makes the upload fail instead of sending a truncated file
+                produced.completeExceptionally(e);
+                close(in);
+                close(out);
+            }
+        });
+
+        final CompletableFuture<Message> upload;
+        try {
+            upload = client.executeAsync(SendDocument.builder()
+                    .chatId(chatId)
+                    .document(new InputFile(in, fileName))
+                    .caption(caption)
+                    .build());
+        } catch (RuntimeException e) {
+            close(in);
+            throw new IOException("upload of %s failed".formatted(fileName), e);
+        }
+        // whether the writer had failed by the time the upload completed; a later failure is the writer
+        // hitting the pipe closed here
+        final CompletableFuture<Boolean> writerFailedFirst = upload.handle((_, _) -> {
+            final boolean failed = produced.isCompletedExceptionally();
+            close(in);
+            return failed;
+        });
+
+        final long deadline = System.nanoTime() + UPLOAD_TIMEOUT.toNanos();
+        try {
+            if (upload.get(remaining(deadline), TimeUnit.NANOSECONDS) == null) {
+                throw new IOException("upload of %s was rejected".formatted(fileName));
+            }
+            return produced.get(remaining(deadline), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (!upload.isCompletedExceptionally() || writerFailedFirst.join()) {
+                throw produceFailure(fileName, produced);
+            }
+            throw new IOException("upload of %s failed".formatted(fileName), e.getCause());
+        } catch (TimeoutException e) {
+            upload.cancel(true);
+            close(in);
+            throw new IOException("upload of %s timed out after %s".formatted(fileName, UPLOAD_TIMEOUT));
+        } catch (InterruptedException e) {
+            upload.cancel(true);
+            close(in);
+            throw e;
+        }
+    }
+
+    private static IOException produceFailure(final String fileName, final CompletableFuture<?> produced) {
+        final Throwable error = produced.exceptionNow();
+        if (error instanceof IOException io) return io;
+        return new IOException("failed to produce %s".formatted(fileName), error);
+    }
+
+    private static long remaining(final long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    private static void close(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+}
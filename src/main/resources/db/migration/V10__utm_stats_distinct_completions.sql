@@ -0,0 +1,27 @@
+-- completed counts users of the source who filled at least one questionnaire, not questionnaires,
+-- so a user filling /start again no longer pushes conversion past 100%
+CREATE OR REPLACE FUNCTION utm_stats_count_completion() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF EXISTS (SELECT 1 FROM questionnaires q WHERE q.user_id = NEW.user_id AND q.id <> NEW.id) THEN
+        RETURN NULL;
+    END IF;
+
+    INSERT INTO utm_stats (utm, completed)
+    SELECT utm_key(u.utm), 1
+    FROM users u
+    WHERE u.id = NEW.user_id
+    ON CONFLICT (utm) DO UPDATE SET completed = utm_stats.completed + 1;
+    RETURN NULL;
+END;
+$$;
+
+UPDATE utm_stats s
+SET completed = coalesce(c.completed, 0)
+FROM utm_stats t
+         LEFT JOIN (SELECT utm_key(u.utm) AS utm, count(DISTINCT q.user_id) AS completed
+                    FROM questionnaires q
+                             JOIN users u ON u.id = q.user_id
+                    GROUP BY utm_key(u.utm)) c ON c.utm = t.utm
+WHERE s.utm = t.utm;
@@ -0,0 +1,4 @@
+-- inbox rows are claimed by a consumer and deleted once processed; an expired claim can be taken over
+ALTER TABLE update_inbox
+    ADD COLUMN IF NOT EXISTS claimed_by    varchar(128),
+    ADD COLUMN IF NOT EXISTS claimed_until timestamptz;
@@ -0,0 +1,3 @@
+-- broadcast leases are held per process, as the instance id followed by a random token
+ALTER TABLE broadcast_jobs
+    ALTER COLUMN owner TYPE varchar(128);
@@ -0,0 +1,4 @@
+-- users are inserted one by one or by a single INSERT ... SELECT FROM unnest(...) per import chunk,
+-- never through hibernate batches, so ids are taken one at a time again instead of in blocks of 50
+ALTER TABLE users
+    ALTER COLUMN id SET INCREMENT BY 1;
@@ -0,0 +1,37 @@
+-- tables that were historically created by hibernate ddl-auto; later migrations attach to them
+CREATE TABLE IF NOT EXISTS users
+(
+    id                 bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username           varchar(255),
+    chat_id            bigint                      NOT NULL UNIQUE,
+    created_at         timestamp(6) with time zone NOT NULL,
+    account_non_locked boolean                     NOT NULL,
+    role               smallint                    NOT NULL CHECK (role BETWEEN 0 AND 1),
+    utm                varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS questionnaires
+(
+    id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id       bigint                      NOT NULL,
+    chat_id       bigint                      NOT NULL,
+    full_name     varchar(255)                NOT NULL,
+    birth_date    varchar(255)                NOT NULL,
+    gender        varchar(255)                NOT NULL,
+    photo_file_id varchar(255)                NOT NULL,
+    created_at    timestamp(6) with time zone NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS questionnaires_created_at_idx ON questionnaires (created_at);
+
+CREATE TABLE IF NOT EXISTS render_jobs
+(
+    id         bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    chat_id    bigint                      NOT NULL,
+    since      timestamp(6) with time zone NOT NULL,
+    status     varchar(255)                NOT NULL,
+    cursor_id  bigint                      NOT NULL,
+    processed  bigint                      NOT NULL,
+    part       integer                     NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL
+);
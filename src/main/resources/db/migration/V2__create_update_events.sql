@@ -0,0 +1,67 @@
+-- one row per processed update; written in batches with COPY by UpdateEventWriter
+CREATE TABLE IF NOT EXISTS update_events
+(
+    time       timestamptz NOT NULL,
+    chat_id    bigint      NOT NULL,
+    update_id  integer     NOT NULL,
+    query_type text        NOT NULL,
+    command    text,
+    step       smallint,
+    latency_us bigint      NOT NULL,
+    outcome    text        NOT NULL
+);
+
+SELECT create_hypertable('update_events', by_range('time', INTERVAL '1 day'), if_not_exists => TRUE);
+SELECT add_retention_policy('update_events', INTERVAL '30 days', if_not_exists => TRUE);
+
+CREATE INDEX IF NOT EXISTS update_events_chat_id_time_idx ON update_events (chat_id, time DESC);
+
+-- per-minute throughput and latency
+CREATE MATERIALIZED VIEW IF NOT EXISTS update_throughput_1m
+    WITH (timescaledb.continuous) AS
+SELECT time_bucket(INTERVAL '1 minute', time) AS bucket,
+       query_type,
+       outcome,
+       count(*)                               AS updates,
+       avg(latency_us)                        AS avg_latency_us,
+       max(latency_us)                        AS max_latency_us
+FROM update_events
+GROUP BY bucket, query_type, outcome
+WITH NO DATA;
+
+SELECT add_continuous_aggregate_policy('update_throughput_1m',
+                                       start_offset => INTERVAL '1 hour',
+                                       end_offset => INTERVAL '1 minute',
+                                       schedule_interval => INTERVAL '1 minute',
+                                       if_not_exists => TRUE);
+
+-- how many times each /start step was reached; COMPLETED is recorded one step past the last one
+CREATE MATERIALIZED VIEW IF NOT EXISTS start_funnel_1m
+    WITH (timescaledb.continuous) AS
+SELECT time_bucket(INTERVAL '1 minute', time) AS bucket,
+       step,
+       count(*)                               AS reached
+FROM update_events
+WHERE command = '/start'
+  AND outcome IN ('STEP', 'COMPLETED')
+GROUP BY bucket, step
+WITH NO DATA;
+
+SELECT add_continuous_aggregate_policy('start_funnel_1m',
+                                       start_offset => INTERVAL '1 hour',
+                                       end_offset => INTERVAL '1 minute',
+                                       schedule_interval => INTERVAL '1 minute',
+                                       if_not_exists => TRUE);
+
+-- daily drop-off between consecutive steps
+CREATE OR REPLACE VIEW start_funnel AS
+WITH daily AS (SELECT time_bucket(INTERVAL '1 day', bucket) AS day,
+                      step,
+                      sum(reached)                          AS reached
+               FROM start_funnel_1m
+               GROUP BY day, step)
+SELECT day,
+       step,
+       reached,
+       1 - reached::numeric / NULLIF(lag(reached) OVER (PARTITION BY day ORDER BY step), 0) AS drop_off
+FROM daily;
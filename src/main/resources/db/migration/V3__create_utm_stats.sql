@@ -0,0 +1,64 @@
+-- per-campaign counters maintained at write time, so reports never scan users
+CREATE TABLE IF NOT EXISTS utm_stats
+(
+    utm           varchar(255) PRIMARY KEY,
+    registrations bigint NOT NULL DEFAULT 0,
+    completed     bigint NOT NULL DEFAULT 0
+);
+
+CREATE OR REPLACE FUNCTION utm_key(utm varchar) RETURNS varchar
+    LANGUAGE sql
+    IMMUTABLE AS
+$$
+SELECT coalesce(nullif(utm, ''), '(none)')
+$$;
+
+CREATE OR REPLACE FUNCTION utm_stats_count_registration() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    INSERT INTO utm_stats (utm, registrations)
+    VALUES (utm_key(NEW.utm), 1)
+    ON CONFLICT (utm) DO UPDATE SET registrations = utm_stats.registrations + 1;
+    RETURN NULL;
+END;
+$$;
+
+CREATE OR REPLACE FUNCTION utm_stats_count_completion() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    INSERT INTO utm_stats (utm, completed)
+    SELECT utm_key(u.utm), 1
+    FROM users u
+    WHERE u.id = NEW.user_id
+    ON CONFLICT (utm) DO UPDATE SET completed = utm_stats.completed + 1;
+    RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS utm_stats_registration ON users;
+CREATE TRIGGER utm_stats_registration
+    AFTER INSERT
+    ON users
+    FOR EACH ROW
+EXECUTE FUNCTION utm_stats_count_registration();
+
+DROP TRIGGER IF EXISTS utm_stats_completion ON questionnaires;
+CREATE TRIGGER utm_stats_completion
+    AFTER INSERT
+    ON questionnaires
+    FOR EACH ROW
+EXECUTE FUNCTION utm_stats_count_completion();
+
+-- one-off backfill of rows written before the triggers existed
+INSERT INTO utm_stats (utm, registrations, completed)
+SELECT utm_key(u.utm),
+       count(*),
+       coalesce(sum(q.completed), 0)
+FROM users u
+         LEFT JOIN (SELECT user_id, count(*) AS completed FROM questionnaires GROUP BY user_id) q
+                   ON q.user_id = u.id
+GROUP BY utm_key(u.utm)
+ON CONFLICT (utm) DO UPDATE SET registrations = EXCLUDED.registrations,
+                                completed     = EXCLUDED.completed;
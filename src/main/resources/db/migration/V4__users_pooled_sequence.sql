@@ -0,0 +1,4 @@
+-- hibernate reserves blocks of 50 ids per sequence call (pooled-lo), which keeps insert batching on;
+-- inserts that rely on the identity default still take whole blocks and cannot collide
+ALTER TABLE users
+    ALTER COLUMN id SET INCREMENT BY 50;
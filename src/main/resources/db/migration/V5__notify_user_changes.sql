@@ -0,0 +1,28 @@
+-- every instance LISTENs on user_changes and evicts the chat from its local user cache
+CREATE OR REPLACE FUNCTION users_notify_change() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('user_changes', OLD.chat_id::text);
+    ELSE
+        PERFORM pg_notify('user_changes', NEW.chat_id::text);
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS users_notify_update ON users;
+CREATE TRIGGER users_notify_update
+    AFTER UPDATE
+    ON users
+    FOR EACH ROW
+    WHEN (OLD.* IS DISTINCT FROM NEW.*)
+EXECUTE FUNCTION users_notify_change();
+
+DROP TRIGGER IF EXISTS users_notify_delete ON users;
+CREATE TRIGGER users_notify_delete
+    AFTER DELETE
+    ON users
+    FOR EACH ROW
+EXECUTE FUNCTION users_notify_change();
@@ -0,0 +1,25 @@
+-- instances running in cluster mode; a member is alive while its heartbeat is fresher than the lease ttl
+CREATE TABLE IF NOT EXISTS cluster_members
+(
+    instance_id  varchar(64) PRIMARY KEY,
+    heartbeat_at timestamptz NOT NULL
+);
+
+-- chat shards (floorMod(chat_id, shards)) and the instance that currently processes them
+CREATE TABLE IF NOT EXISTS shard_leases
+(
+    shard      int PRIMARY KEY,
+    owner      varchar(64) NOT NULL,
+    expires_at timestamptz NOT NULL
+);
+
+-- updates received by the polling instance for shards it does not own
+CREATE TABLE IF NOT EXISTS update_inbox
+(
+    id         bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    shard      int         NOT NULL,
+    payload    text        NOT NULL,
+    created_at timestamptz NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS update_inbox_shard_id_idx ON update_inbox (shard, id);
@@ -0,0 +1,22 @@
+-- mass messages to all users; cursor_id is the last users.id the message was sent to
+CREATE TABLE IF NOT EXISTS broadcast_jobs
+(
+    id               bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    chat_id          bigint                      NOT NULL,
+    text             text                        NOT NULL,
+    status           varchar(255)                NOT NULL,
+    cursor_id        bigint                      NOT NULL,
+    sent             bigint                      NOT NULL,
+    failed           bigint                      NOT NULL,
+    blocked          bigint                      NOT NULL,
+    owner            varchar(64),
+    lease_expires_at timestamp(6) with time zone,
+    created_at       timestamp(6) with time zone NOT NULL
+);
+
+-- chats that blocked the bot; kept out of broadcasts until the user unblocks it
+CREATE TABLE IF NOT EXISTS blocked_chats
+(
+    chat_id    bigint PRIMARY KEY,
+    blocked_at timestamptz NOT NULL DEFAULT now()
+);
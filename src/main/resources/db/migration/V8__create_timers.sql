@@ -0,0 +1,12 @@
+-- pending delayed tasks per chat, at most one per kind; a row is deleted by the instance that runs it
+CREATE TABLE IF NOT EXISTS timers
+(
+    id      bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    chat_id bigint      NOT NULL,
+    kind    varchar(64) NOT NULL,
+    payload text,
+    due_at  timestamptz NOT NULL,
+    UNIQUE (chat_id, kind)
+);
+
+CREATE INDEX IF NOT EXISTS timers_due_at_idx ON timers (due_at);
@@ -0,0 +1,7 @@
+-- highest update_id received by the poller, per bot; updates up to it are not processed again after a restart
+CREATE TABLE IF NOT EXISTS update_offsets
+(
+    bot_id     varchar(64)                 NOT NULL PRIMARY KEY,
+    high_water bigint                      NOT NULL,
+    updated_at timestamp(6) with time zone NOT NULL
+);
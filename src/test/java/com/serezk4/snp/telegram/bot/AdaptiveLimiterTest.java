@@ -0,0 +1,120 @@
+package com.serezk4.snp.telegram.bot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void queuesBeyondTheLimitAndGrantsOnRelease() {
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10, 1.5, 0.2);
+
+        assertTrue(limiter.acquire().isDone());
+        assertTrue(limiter.acquire().isDone());
+        final CompletableFuture<Void> third = limiter.acquire();
+
+        assertFalse(third.isDone());
+        assertEquals(1, limiter.getWaiting());
+
+        limiter.release(FAST);
+
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    void growsBySqrtOfTheLimitWhileTasksWait() {
+        final AdaptiveLimiter limiter = limiter(4, 1, 100);
+        acquire(limiter, 4);
+        limiter.acquire();
+
+        limiter.release(FAST);
+
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    void holdsWhileNothingWaits() {
+        final AdaptiveLimiter limiter = limiter(4, 1, 100);
+        acquire(limiter, 4);
+
+        limiter.release(FAST);
+        limiter.release(FAST);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void shrinksByAtMostHalfWhenServiceTimeGrows() {
+        final AdaptiveLimiter limiter = limiter(8, 1, 100);
+        acquire(limiter, 8);
+
+        limiter.release(FAST);
+        assertEquals(8, limiter.getLimit());
+
+        limiter.release(SLOW);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void staysWithinTheBounds() {
+        final AdaptiveLimiter shrinking = limiter(4, 3, 100);
+        acquire(shrinking, 4);
+        shrinking.release(FAST);
+        shrinking.release(SLOW);
+        assertEquals(3, shrinking.getLimit());
+
+        final AdaptiveLimiter growing = limiter(4, 1, 5);
+        acquire(growing, 4);
+        growing.acquire();
+        growing.release(FAST);
+        assertEquals(5, growing.getLimit());
+
+        assertEquals(10, limiter(50, 1, 10).getLimit());
+        assertEquals(2, limiter(0, 2, 10).getLimit());
+    }
+
+    @Test
+    void ignoresSamplesWhileMostlyIdle() {
+        final AdaptiveLimiter limiter = limiter(8, 1, 100);
+        acquire(limiter, 2);
+
+        limiter.release(FAST);
+        limiter.release(SLOW);
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void abandonedSlotIsReusedWithoutAdjustingTheLimit() {
+        final AdaptiveLimiter limiter = limiter(1, 1, 10);
+        limiter.acquire();
+        final CompletableFuture<Void> next = limiter.acquire();
+
+        limiter.abandon();
+
+        assertTrue(next.isDone());
+        assertEquals(1, limiter.getLimit());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    /**
+     * Without smoothing, so one sample moves the limit all the way to its target.
+     */
+    private static AdaptiveLimiter limiter(final int initial, final int min, final int max) {
+        return new AdaptiveLimiter(initial, min, max, 1.5, 1.0);
+    }
+
+    private static void acquire(final AdaptiveLimiter limiter, final int slots) {
+        for (int i = 0; i < slots; i++) assertTrue(limiter.acquire().isDone());
+    }
+}
@@ -0,0 +1,168 @@
+package com.serezk4.snp.telegram.bot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.serezk4.snp.database.cache.UserCache;
+import com.serezk4.snp.database.model.User;
+import com.serezk4.snp.database.notification.PgNotificationListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FloodControlTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final int RATE = 2;
+    private static final int BURST = 3;
+    private static final long INTERVAL = TimeUnit.SECONDS.toNanos(1) / RATE;
+    private static final long T = 1_000_000_000_000L;
+
+    private MeterRegistry meterRegistry;
+    private UserCache userCache;
+    private FloodControl floodControl;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new UserCache(
+                new PgNotificationListener("jdbc:postgresql://localhost/test", "test", "test", 500, 30_000),
+                meterRegistry, 600_000, 1000);
+        floodControl = new FloodControl(userCache, meterRegistry, true, 4, RATE, BURST, 50, 5);
+    }
+
+    @Test
+    void allowsTheBurstAtOnceThenDrops() {
+        for (int i = 0; i < BURST; i++) assertTrue(floodControl.tryAcquire(1, T));
+        assertFalse(floodControl.tryAcquire(1, T));
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() {
+        for (int i = 0; i < BURST; i++) floodControl.tryAcquire(1, T);
+
+        assertFalse(floodControl.tryAcquire(1, T + INTERVAL - 1));
+        assertTrue(floodControl.tryAcquire(1, T + INTERVAL));
+        assertFalse(floodControl.tryAcquire(1, T + INTERVAL));
+        assertTrue(floodControl.tryAcquire(1, T + 2 * INTERVAL));
+    }
+
+    @Test
+    void neverThrottlesAtTheConfiguredRate() {
+        for (int i = 0; i < 1000; i++) assertTrue(floodControl.tryAcquire(1, T + i * INTERVAL));
+    }
+
+    @Test
+    void idleTimeRefillsUpToTheBurstOnly() {
+        floodControl.tryAcquire(1, T);
+
+        final long later = T + TimeUnit.HOURS.toNanos(1);
+        for (int i = 0; i < BURST; i++) assertTrue(floodControl.tryAcquire(1, later));
+        assertFalse(floodControl.tryAcquire(1, later));
+    }
+
+    @Test
+    void countsEveryDropButEachThrottlingEpisodeOnce() {
+        for (int i = 0; i < BURST + 3; i++) floodControl.tryAcquire(1, T);
+
+        assertEquals(3, meterRegistry.counter("bot.flood.throttled").count());
+        assertEquals(1, meterRegistry.counter("bot.flood.throttled.chats").count());
+
+        assertTrue(floodControl.tryAcquire(1, T + INTERVAL));
+        assertFalse(floodControl.tryAcquire(1, T + INTERVAL));
+
+        assertEquals(4, meterRegistry.counter("bot.flood.throttled").count());
+        assertEquals(2, meterRegistry.counter("bot.flood.throttled.chats").count());
+    }
+
+    @Test
+    void adminsGetTheAdminLimits() {
+        final long chatId = 7;
+        userCache.put(User.builder().chatId(chatId).role(User.Role.ADMIN).build(), userCache.generation(chatId));
+
+        for (int i = 0; i < 5; i++) assertTrue(floodControl.tryAcquire(chatId, T));
+        assertFalse(floodControl.tryAcquire(chatId, T));
+    }
+
+    @Test
+    void keepsABucketPerChatAcrossStripes() {
+        final int chats = 5000;
+        for (int i = 0; i < chats; i++) {
+            final long chatId = i % 2 == 0 ? i : -1_000_000_000_000L - i;
+            for (int j = 0; j < BURST; j++) assertTrue(floodControl.tryAcquire(chatId, T));
+        }
+
+        assertEquals(chats, floodControl.size());
+        for (int i = 0; i < chats; i++) {
+            final long chatId = i % 2 == 0 ? i : -1_000_000_000_000L - i;
+            assertFalse(floodControl.tryAcquire(chatId, T));
+        }
+    }
+
+    @Test
+    void dropsRefilledBucketsWhenAStripeGrows() {
+        for (int i = 0; i < 1000; i++) floodControl.tryAcquire(i, T);
+
+        // every stripe outgrows its table, and its refilled buckets are gone after the rebuild
+        final long later = T + INTERVAL;
+        for (int i = 1000; i < 6000; i++) assertTrue(floodControl.tryAcquire(i, later));
+
+        assertEquals(5000, floodControl.size());
+        for (int i = 0; i < BURST; i++) assertTrue(floodControl.tryAcquire(0, later));
+    }
+
+    @Test
+    void exemptsMembershipChangesAndCancels() {
+        final UpdateProxy message = update("""
+                {"update_id": 1, "message": {"message_id": 1, "date": 1700000000, "text": "hello",
+                 "chat": {"id": 42, "type": "private"}, "from": {"id": 42, "is_bot": false, "first_name": "U"}}}""");
+        final UpdateProxy cancel = update("""
+                {"update_id": 2, "message": {"message_id": 2, "date": 1700000000, "text": "/cancel",
+                 "chat": {"id": 42, "type": "private"}, "from": {"id": 42, "is_bot": false, "first_name": "U"}}}""");
+        final UpdateProxy blocked = update("""
+                {"update_id": 3, "my_chat_member": {"date": 1700000000,
+                 "chat": {"id": 42, "type": "private"}, "from": {"id": 42, "is_bot": false, "first_name": "U"},
+                 "old_chat_member": {"status": "member", "user": {"id": 1, "is_bot": true, "first_name": "B"}},
+                 "new_chat_member": {"status": "kicked", "until_date": 0,
+                                     "user": {"id": 1, "is_bot": true, "first_name": "B"}}}}""");
+
+        assertFalse(FloodControl.isExempt(message));
+        assertTrue(FloodControl.isExempt(cancel));
+        assertTrue(FloodControl.isExempt(blocked));
+
+        while (floodControl.tryAcquire(message)) {
+            // exhaust the chat's bucket
+        }
+        assertTrue(floodControl.tryAcquire(cancel));
+        assertTrue(floodControl.tryAcquire(blocked));
+    }
+
+    @Test
+    void keysChatlessUpdatesByUser() {
+        for (int i = 0; i < BURST; i++) assertTrue(floodControl.tryAcquire(pollAnswer(1001)));
+        assertFalse(floodControl.tryAcquire(pollAnswer(1001)));
+
+        assertTrue(floodControl.tryAcquire(pollAnswer(1002)));
+    }
+
+    private static UpdateProxy pollAnswer(final long userId) {
+        return update("""
+                {"update_id": 4, "poll_answer": {"poll_id": "poll", "option_ids": [0],
+                 "user": {"id": %d, "is_bot": false, "first_name": "U"}}}""".formatted(userId));
+    }
+
+    private static UpdateProxy update(final String json) {
+        try {
+            return new UpdateProxy(MAPPER.readValue(json, Update.class));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
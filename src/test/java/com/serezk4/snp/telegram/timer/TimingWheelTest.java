@@ -0,0 +1,142 @@
+package com.serezk4.snp.telegram.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    /**
+     * Four slots per level and three levels: level 0 covers 4 ticks, level 1 16 and level 2 64, so
+     * small deadlines already cascade across levels and into the overflow list.
+     */
+    private static final int BITS = 2;
+    private static final int LEVELS = 3;
+    private static final long RANGE = 1L << (BITS * LEVELS);
+
+    @Test
+    void expiresOnTheDeadlineTickNotBefore() {
+        final TimingWheel<String> wheel = new TimingWheel<>(BITS, LEVELS, 0);
+        wheel.add(5, "a");
+
+        final List<String> expired = new ArrayList<>();
+        wheel.advance(4, expired::add);
+        assertTrue(expired.isEmpty());
+
+        wheel.advance(5, expired::add);
+        assertEquals(List.of("a"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void roundsPassedDeadlinesUpToTheNextTick() {
+        final TimingWheel<String> wheel = new TimingWheel<>(BITS, LEVELS, 10);
+        wheel.add(3, "past");
+        wheel.add(10, "now");
+
+        final List<String> expired = new ArrayList<>();
+        wheel.advance(11, expired::add);
+        assertEquals(List.of("past", "now"), expired);
+    }
+
+    @Test
+    void roundsMillisUpToTicks() {
+        final long origin = 1_700_000_000_000L;
+
+        assertEquals(0, TimerService.tickOf(origin, origin, 100));
+        assertEquals(1, TimerService.tickOf(origin + 1, origin, 100));
+        assertEquals(1, TimerService.tickOf(origin + 100, origin, 100));
+        assertEquals(2, TimerService.tickOf(origin + 101, origin, 100));
+        // a deadline before the origin, e.g. loaded by the sweep right after a restart
+        assertEquals(-1, TimerService.tickOf(origin - 150, origin, 100));
+    }
+
+    @Test
+    void cascadesEveryEntryDownToItsExactTick() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(BITS, LEVELS, 0);
+        final long[] deadlines = {1, 3, 4, 5, 15, 16, 17, 63, RANGE, RANGE + 1, 3 * RANGE + 7};
+        for (long deadline : deadlines) wheel.add(deadline, deadline);
+
+        for (long tick = 1; tick <= 3 * RANGE + 7; tick++) {
+            final long now = tick;
+            wheel.advance(tick, deadline -> assertEquals(now, deadline));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesRandomDeadlinesInOrderOnOneJump() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(BITS, LEVELS, 7);
+        final Random random = new Random(42);
+        final int count = 1000;
+        for (int i = 0; i < count; i++) {
+            final long deadline = 8 + random.nextInt((int) (4 * RANGE));
+            wheel.add(deadline, deadline);
+        }
+
+        final List<Long> expired = new ArrayList<>();
+        wheel.advance(8 + 4 * RANGE, expired::add);
+
+        assertEquals(count, expired.size());
+        for (int i = 1; i < expired.size(); i++) assertTrue(expired.get(i - 1) <= expired.get(i));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledEntryNeverExpires() {
+        final TimingWheel<String> wheel = new TimingWheel<>(BITS, LEVELS, 0);
+        final TimingWheel.Node<String> a = wheel.add(2, "a");
+        wheel.add(2, "b");
+
+        assertTrue(wheel.cancel(a));
+        assertEquals(1, wheel.size());
+
+        final List<String> expired = new ArrayList<>();
+        wheel.advance(2, expired::add);
+        assertEquals(List.of("b"), expired);
+    }
+
+    @Test
+    void cancelsAnEntryOnlyOnce() {
+        final TimingWheel<String> wheel = new TimingWheel<>(BITS, LEVELS, 0);
+        final TimingWheel.Node<String> node = wheel.add(1, "a");
+
+        assertTrue(wheel.cancel(node));
+        assertFalse(wheel.cancel(node));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void doesNotCancelAnExpiredEntry() {
+        final TimingWheel<String> wheel = new TimingWheel<>(BITS, LEVELS, 0);
+        final TimingWheel.Node<String> node = wheel.add(1, "a");
+        wheel.advance(1, _ -> { });
+
+        assertFalse(wheel.cancel(node));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelsEntriesMovedByACascade() {
+        final TimingWheel<Long> wheel = new TimingWheel<>(BITS, LEVELS, 0);
+        final Map<Long, TimingWheel.Node<Long>> nodes = new HashMap<>();
+        for (long deadline : new long[]{40, 42, 2 * RANGE + 3}) nodes.put(deadline, wheel.add(deadline, deadline));
+
+        // 32 cascades the level 2 slot holding 40 and 42, 128 re-places the overflow entry
+        final List<Long> expired = new ArrayList<>();
+        wheel.advance(32, expired::add);
+        assertTrue(wheel.cancel(nodes.get(40L)));
+        wheel.advance(2 * RANGE, expired::add);
+        assertTrue(wheel.cancel(nodes.get(2 * RANGE + 3)));
+        wheel.advance(3 * RANGE, expired::add);
+        assertEquals(List.of(42L), expired);
+        assertEquals(0, wheel.size());
+    }
+}